@@ -0,0 +1,111 @@
+package com.lapism.searchview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Synthetic suggestions and the queries typed against them. Items are one to three made-up
+ * words built from a small set of syllables, some capitalized, with weights that fall off like
+ * real popularity. Everything comes from a fixed seed, so every run sees the same corpus.
+ */
+class BenchmarkCorpus {
+
+    // a power of two, benchmarks walk the queries with a mask
+    static final int QUERIES = 1024;
+    // SearchView.SUGGESTIONS_LIMIT
+    static final int LIMIT = 8;
+
+    // common enough to match a large part of any corpus
+    static final String COMMON = "ran";
+
+    private static final String[] SYLLABLES = {
+            "ran", "ko", "mel", "ta", "vi", "sor", "den", "li", "pa", "gre", "nu", "bo", "che", "ist", "ul", "ma"
+    };
+    private static final String ADJACENT = "qwertyuiopasdfghjklzxcvbnm";
+
+    private final Random mRandom;
+    private final List<String> mItems;
+    private final int[] mWeights;
+
+    BenchmarkCorpus(int size) {
+        mRandom = new Random(size);
+        mItems = new ArrayList<>(size);
+        mWeights = new int[size];
+        StringBuilder item = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            item.setLength(0);
+            int words = 1 + mRandom.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    item.append(' ');
+                }
+                int start = item.length();
+                int syllables = 2 + mRandom.nextInt(3);
+                for (int s = 0; s < syllables; s++) {
+                    item.append(SYLLABLES[mRandom.nextInt(SYLLABLES.length)]);
+                }
+                if (mRandom.nextInt(4) == 0) {
+                    item.setCharAt(start, Character.toUpperCase(item.charAt(start)));
+                }
+            }
+            mItems.add(item.toString());
+            // zipf-like, a few items carry most of the weight
+            mWeights[i] = 1000000 / (1 + mRandom.nextInt(size));
+        }
+    }
+
+    List<String> getItems() {
+        return mItems;
+    }
+
+    SuggestionIndex newIndex(int completions) {
+        SuggestionIndex index = new SuggestionIndex(completions);
+        for (int i = 0; i < mItems.size(); i++) {
+            index.add(mItems.get(i), mWeights[i]);
+        }
+        index.trimToSize();
+        return index;
+    }
+
+    // the first one to six characters of items, as typed
+    String[] prefixQueries() {
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String item = randomItem();
+            queries[i] = item.substring(0, Math.min(item.length(), 1 + mRandom.nextInt(6)));
+        }
+        return queries;
+    }
+
+    // prefixes of three to eight characters with one character mistyped
+    String[] typoQueries() {
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String item = randomItem();
+            char[] query = item.substring(0, Math.min(item.length(), 3 + mRandom.nextInt(6))).toCharArray();
+            query[mRandom.nextInt(query.length)] = ADJACENT.charAt(mRandom.nextInt(ADJACENT.length()));
+            queries[i] = new String(query);
+        }
+        return queries;
+    }
+
+    // three to six characters from anywhere in items
+    String[] infixQueries() {
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String item = randomItem();
+            int length = Math.min(item.length(), 3 + mRandom.nextInt(4));
+            int start = mRandom.nextInt(item.length() - length + 1);
+            queries[i] = item.substring(start, start + length);
+        }
+        return queries;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private String randomItem() {
+        return mItems.get(mRandom.nextInt(mItems.size()));
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.lapism.searchview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Highlight ranges of a whole results list, read the way SearchAdapter binds its rows: the
+ * text copied into a reused buffer and the matched range checked against it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class HighlightBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private final char[] mChars = new char[256];
+    private SuggestionResults[] mPrefixResults;
+    private SuggestionResults[] mFuzzyResults;
+    private SuggestionResults[] mInfixResults;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(size);
+        SuggestionIndex index = corpus.newIndex(0);
+        String[] prefixQueries = corpus.prefixQueries();
+        String[] typoQueries = corpus.typoQueries();
+        String[] infixQueries = corpus.infixQueries();
+        mPrefixResults = new SuggestionResults[BenchmarkCorpus.QUERIES];
+        mFuzzyResults = new SuggestionResults[BenchmarkCorpus.QUERIES];
+        mInfixResults = new SuggestionResults[BenchmarkCorpus.QUERIES];
+        for (int i = 0; i < BenchmarkCorpus.QUERIES; i++) {
+            mPrefixResults[i] = index.search(prefixQueries[i], BenchmarkCorpus.LIMIT);
+            mFuzzyResults[i] = index.searchFuzzy(typoQueries[i], SuggestionRequest.getFuzzyEdits(typoQueries[i].length()), BenchmarkCorpus.LIMIT);
+            mInfixResults[i] = index.searchInfix(infixQueries[i], BenchmarkCorpus.LIMIT);
+        }
+    }
+
+    @Benchmark
+    public int prefix() {
+        return highlight(mPrefixResults[next()]);
+    }
+
+    @Benchmark
+    public int fuzzy() {
+        return highlight(mFuzzyResults[next()]);
+    }
+
+    @Benchmark
+    public int infix() {
+        return highlight(mInfixResults[next()]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private int next() {
+        return mNext++ & (BenchmarkCorpus.QUERIES - 1);
+    }
+
+    private int highlight(SuggestionResults results) {
+        int highlighted = 0;
+        for (int position = 0; position < results.size(); position++) {
+            int length = results.getTextLength(position);
+            results.getChars(position, mChars, 0);
+            int start = results.getMatchStart(position);
+            int end = Math.min(results.getMatchEnd(position), length);
+            if (start >= 0 && end > start) {
+                highlighted += end - start + mChars[start];
+            }
+        }
+        return highlighted;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.lapism.searchview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Prefix, fuzzy and infix lookups of the top {@link BenchmarkCorpus#LIMIT} suggestions, the way
+ * SearchView asks for them on every keystroke.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class LookupBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    // 8 reads a page of results stored at the node, 0 ranks every item below the prefix or an
+    // accepted fuzzy node by weight on each query
+    @Param({"0", "8"})
+    public int completions;
+
+    private SuggestionIndex mIndex;
+    private String[] mPrefixQueries;
+    private String[] mTypoQueries;
+    private String[] mInfixQueries;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(size);
+        mIndex = corpus.newIndex(completions);
+        mPrefixQueries = corpus.prefixQueries();
+        mTypoQueries = corpus.typoQueries();
+        mInfixQueries = corpus.infixQueries();
+        // the trigram index is built by the first infix query, not something to measure
+        mIndex.searchInfix(BenchmarkCorpus.COMMON, BenchmarkCorpus.LIMIT);
+    }
+
+    @Benchmark
+    public SuggestionResults prefix() {
+        return mIndex.search(mPrefixQueries[next()], BenchmarkCorpus.LIMIT);
+    }
+
+    @Benchmark
+    public SuggestionResults fuzzy() {
+        String query = mTypoQueries[next()];
+        return mIndex.searchFuzzy(query, SuggestionRequest.getFuzzyEdits(query.length()), BenchmarkCorpus.LIMIT);
+    }
+
+    @Benchmark
+    public SuggestionResults infix() {
+        return mIndex.searchInfix(mInfixQueries[next()], BenchmarkCorpus.LIMIT);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private int next() {
+        return mNext++ & (BenchmarkCorpus.QUERIES - 1);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.lapism.searchview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Query normalization, run on every keystroke before the index is touched.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NormalizeBenchmark {
+
+    private String[] mQueries;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        mQueries = new BenchmarkCorpus(10000).prefixQueries();
+    }
+
+    @Benchmark
+    public String normalize() {
+        return SuggestionIndex.normalize(nextQuery());
+    }
+
+    // what a cache lookup pays before the map is hit
+    @Benchmark
+    public String cacheKey() {
+        return SuggestionCache.key(nextQuery(), SuggestionRequest.MATCH_PREFIX, false, BenchmarkCorpus.LIMIT);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private String nextQuery() {
+        return mQueries[mNext++ & (BenchmarkCorpus.QUERIES - 1)];
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.lapism.searchview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Top-K selection of {@link BenchmarkCorpus#LIMIT} out of every candidate, on its own and as
+ * {@link SuggestionIndex#rankItems} runs it for infix matches, with the match offsets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class RankingBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private final SuggestionHeap mHeap = new SuggestionHeap();
+    private final int[] mRanked = new int[BenchmarkCorpus.LIMIT];
+    private long[] mKeys;
+
+    private SuggestionIndex mIndex;
+    private int[] mMatches;
+    private int mMatchCount;
+
+    @Setup
+    public void setUp() {
+        // rank keys as the index builds them, cost and weight above the item id
+        Random random = new Random(size);
+        mKeys = new long[size];
+        for (int id = 0; id < size; id++) {
+            mKeys[id] = ((long) random.nextInt(1 << 20) << 24) | id;
+        }
+
+        BenchmarkCorpus corpus = new BenchmarkCorpus(size);
+        mIndex = corpus.newIndex(0);
+        mMatchCount = mIndex.matchInfix(BenchmarkCorpus.COMMON);
+        mMatches = Arrays.copyOf(mIndex.matches(), mMatchCount);
+    }
+
+    @Benchmark
+    public int heap() {
+        mHeap.reset(BenchmarkCorpus.LIMIT);
+        for (long key : mKeys) {
+            mHeap.offer(key, 0);
+        }
+        return mHeap.drain(mRanked, null);
+    }
+
+    // a few thousand to a few hundred thousand items contain the common trigram
+    @Benchmark
+    public SuggestionResults rankItems() {
+        return mIndex.rankItems(BenchmarkCorpus.COMMON, mMatches, mMatchCount, BenchmarkCorpus.LIMIT);
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.lapism.searchview;
+
+
+class SearchKeyboard {
+
+    private static final String[] ROWS = {"1234567890", "qwertyuiop", "asdfghjkl", "zxcvbnm"};
+    private static final long[] ADJACENT = new long[36];
+
+    static {
+        for (int row = 0; row < ROWS.length; row++) {
+            for (int column = 0; column < ROWS[row].length(); column++) {
+                char key = ROWS[row].charAt(column);
+                link(key, row, column - 1);
+                link(key, row, column + 1);
+                // rows are staggered, a key touches the two keys above it and the two below
+                link(key, row - 1, column);
+                link(key, row - 1, column + 1);
+                link(key, row + 1, column - 1);
+                link(key, row + 1, column);
+            }
+        }
+    }
+
+    static boolean isAdjacent(char a, char b) {
+        int i = slot(a);
+        int j = slot(b);
+        return i >= 0 && j >= 0 && (ADJACENT[i] & (1L << j)) != 0;
+    }
+
+    private static void link(char key, int row, int column) {
+        if (row >= 0 && row < ROWS.length && column >= 0 && column < ROWS[row].length()) {
+            ADJACENT[slot(key)] |= 1L << slot(ROWS[row].charAt(column));
+        }
+    }
+
+    private static int slot(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 26 + c - '0';
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.lapism.searchview;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Named sections in system traces. Everything is looked up by reflection: the enabled check and
+ * the async events are hidden before API 29, and the engine classes that use this also run on a
+ * plain JVM, where no section is ever written. When no trace is being recorded a section costs
+ * one call to the enabled check.
+ * <pre>
+ * boolean traced = SearchTrace.begin("SearchView.initView");
+ * try {
+ *     ...
+ * } finally {
+ *     SearchTrace.end(traced);
+ * }
+ * </pre>
+ */
+class SearchTrace {
+
+    private static final long TRACE_TAG_APP = 1L << 12;
+
+    private static final AtomicInteger sCookies = new AtomicInteger();
+    private static final Method sIsEnabled;
+    // isTagEnabled takes the tag, the public isEnabled of API 29 nothing
+    private static final Object[] sIsEnabledArgs;
+    private static final Method sBeginSection;
+    private static final Method sEndSection;
+    private static final Method sBeginAsync;
+    private static final Method sEndAsync;
+    // the hidden async methods take the tag as their first argument
+    private static final boolean sAsyncTagged;
+
+    static {
+        Method isEnabled = null;
+        Method beginSection = null;
+        Method endSection = null;
+        Method beginAsync = null;
+        Method endAsync = null;
+        boolean asyncTagged = false;
+        try {
+            Class<?> trace = Class.forName("android.os.Trace");
+            beginSection = trace.getMethod("beginSection", String.class);
+            endSection = trace.getMethod("endSection");
+            isEnabled = find(trace, "isEnabled");
+            if (isEnabled == null) {
+                isEnabled = find(trace, "isTagEnabled", long.class);
+            }
+            beginAsync = find(trace, "beginAsyncSection", String.class, int.class);
+            endAsync = find(trace, "endAsyncSection", String.class, int.class);
+            if (beginAsync == null || endAsync == null) {
+                beginAsync = find(trace, "asyncTraceBegin", long.class, String.class, int.class);
+                endAsync = find(trace, "asyncTraceEnd", long.class, String.class, int.class);
+                asyncTagged = true;
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            // not on Android, or older than API 18
+        }
+        sIsEnabled = beginSection == null ? null : isEnabled;
+        sIsEnabledArgs = isEnabled != null && isEnabled.getParameterTypes().length == 1 ? new Object[]{TRACE_TAG_APP} : null;
+        sBeginSection = beginSection;
+        sEndSection = endSection;
+        sBeginAsync = endAsync == null ? null : beginAsync;
+        sEndAsync = beginAsync == null ? null : endAsync;
+        sAsyncTagged = asyncTagged;
+    }
+
+    private SearchTrace() {
+    }
+
+    static boolean isEnabled() {
+        if (sIsEnabled == null) {
+            return false;
+        }
+        try {
+            return (Boolean) sIsEnabled.invoke(null, sIsEnabledArgs);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // returns whether a section was opened, pass it to end
+    static boolean begin(String name) {
+        if (!isEnabled()) {
+            return false;
+        }
+        invoke(sBeginSection, name);
+        return true;
+    }
+
+    static void end(boolean begun) {
+        if (begun) {
+            invoke(sEndSection);
+        }
+    }
+
+    // a section that may end on another thread, returns 0 when none was opened
+    static int beginAsync(String name) {
+        if (sBeginAsync == null || !isEnabled()) {
+            return 0;
+        }
+        int cookie = sCookies.incrementAndGet();
+        if (cookie == 0) {
+            cookie = sCookies.incrementAndGet();
+        }
+        if (sAsyncTagged) {
+            invoke(sBeginAsync, TRACE_TAG_APP, name, cookie);
+        } else {
+            invoke(sBeginAsync, name, cookie);
+        }
+        return cookie;
+    }
+
+    static void endAsync(String name, int cookie) {
+        if (cookie == 0) {
+            return;
+        }
+        if (sAsyncTagged) {
+            invoke(sEndAsync, TRACE_TAG_APP, name, cookie);
+        } else {
+            invoke(sEndAsync, name, cookie);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static Method find(Class<?> trace, String name, Class<?>... parameterTypes) {
+        try {
+            return trace.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void invoke(Method method, Object... args) {
+        try {
+            method.invoke(null, args);
+        } catch (Exception e) {
+            // tracing must never break the caller
+        }
+    }
+
+}
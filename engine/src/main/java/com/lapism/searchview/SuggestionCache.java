@@ -0,0 +1,110 @@
+package com.lapism.searchview;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Least recently used cache of ranked results, bounded both by entry count and by an estimate
+ * of the memory the entries hold.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SuggestionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final LinkedHashMap<String, SuggestionResults> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxEntries;
+    private final int mMaxBytes;
+
+    private int mBytes;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public SuggestionCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public SuggestionCache(int maxEntries, int maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be > 0");
+        }
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+    }
+
+    static String key(CharSequence query, int matchMode, boolean fuzzy, int limit) {
+        return String.valueOf(matchMode) + (fuzzy ? 'f' : 'e') + limit + ':' + SuggestionIndex.normalize(query);
+    }
+
+    public synchronized SuggestionResults get(String key) {
+        SuggestionResults results = mEntries.get(key);
+        if (results != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return results;
+    }
+
+    public synchronized void put(String key, SuggestionResults results) {
+        SuggestionResults previous = mEntries.put(key, results);
+        if (previous != null) {
+            mBytes -= sizeOf(key, previous);
+        }
+        mBytes += sizeOf(key, results);
+        trim();
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized int getBytes() {
+        return mBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SuggestionCache[entries=" + mEntries.size() + ", bytes=" + mBytes + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private void trim() {
+        Iterator<Map.Entry<String, SuggestionResults>> iterator = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxEntries || mBytes > mMaxBytes) && iterator.hasNext()) {
+            Map.Entry<String, SuggestionResults> eldest = iterator.next();
+            mBytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private static int sizeOf(String key, SuggestionResults results) {
+        return ENTRY_OVERHEAD + key.length() * 2 + results.estimateBytes();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+
+
+/**
+ * Keeps the smallest rank keys seen, at most one per item, in a max-heap of longs that is
+ * reused across queries. Every key carries an int payload, the match length or offset.
+ * <p>
+ * A candidate that does not beat the worst kept key costs a single comparison. One that does is
+ * compared with the k kept keys to find an earlier key of its item, then sifted in O(log k), so
+ * selecting k of n costs O(n k) at worst and close to O(n) when few candidates get in. k is a
+ * page of results, small enough for the scan, and nothing is allocated once the array fits.
+ * <p>
+ * Keys are the ones built by {@link SuggestionSearch}, with the item id in the low 24 bits.
+ */
+class SuggestionHeap {
+
+    static final long ITEM_MASK = 0xffffff;
+
+    private long[] mKeys = new long[16];
+    private int[] mPayloads = new int[16];
+    private int mCapacity;
+    private int mSize;
+
+    void reset(int capacity) {
+        if (capacity > mKeys.length) {
+            mKeys = new long[Math.max(mKeys.length * 2, capacity)];
+            mPayloads = new int[mKeys.length];
+        }
+        mCapacity = capacity;
+        mSize = 0;
+    }
+
+    int capacity() {
+        return mCapacity;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    void offer(long key, int payload) {
+        if (mCapacity == 0 || (mSize == mCapacity && key >= mKeys[0])) {
+            return;
+        }
+        long item = key & ITEM_MASK;
+        for (int i = 0; i < mSize; i++) {
+            if ((mKeys[i] & ITEM_MASK) == item) {
+                // a cheaper match of an item already kept, a smaller key only sinks
+                if (key < mKeys[i]) {
+                    mKeys[i] = key;
+                    mPayloads[i] = payload;
+                    siftDown(i);
+                }
+                return;
+            }
+        }
+        if (mSize < mCapacity) {
+            mKeys[mSize] = key;
+            mPayloads[mSize] = payload;
+            siftUp(mSize++);
+        } else {
+            mKeys[0] = key;
+            mPayloads[0] = payload;
+            siftDown(0);
+        }
+    }
+
+    // writes the kept items best first, with their payloads if asked for, and empties the heap
+    int drain(int[] ids, int[] payloads) {
+        int count = mSize;
+        // heapsort in place, the worst key is moved to the end each round
+        while (mSize > 1) {
+            long worst = mKeys[0];
+            int payload = mPayloads[0];
+            mKeys[0] = mKeys[--mSize];
+            mPayloads[0] = mPayloads[mSize];
+            mKeys[mSize] = worst;
+            mPayloads[mSize] = payload;
+            siftDown(0);
+        }
+        for (int i = 0; i < count; i++) {
+            ids[i] = (int) (mKeys[i] & ITEM_MASK);
+            if (payloads != null) {
+                payloads[i] = mPayloads[i];
+            }
+        }
+        mSize = 0;
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "SuggestionHeap" + Arrays.toString(Arrays.copyOf(mKeys, mSize));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private void siftUp(int i) {
+        long key = mKeys[i];
+        int payload = mPayloads[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (mKeys[parent] >= key) {
+                break;
+            }
+            mKeys[i] = mKeys[parent];
+            mPayloads[i] = mPayloads[parent];
+            i = parent;
+        }
+        mKeys[i] = key;
+        mPayloads[i] = payload;
+    }
+
+    private void siftDown(int i) {
+        long key = mKeys[i];
+        int payload = mPayloads[i];
+        int half = mSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < mSize && mKeys[child + 1] > mKeys[child]) {
+                child++;
+            }
+            if (key >= mKeys[child]) {
+                break;
+            }
+            mKeys[i] = mKeys[child];
+            mPayloads[i] = mPayloads[child];
+            i = child;
+        }
+        mKeys[i] = key;
+        mPayloads[i] = payload;
+    }
+
+}
@@ -0,0 +1,595 @@
+package com.lapism.searchview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * Prefix index over suggestion texts. Keys are case-folded and the trie is kept in parallel
+ * primitive arrays.
+ * <p>
+ * Texts are packed into one shared char arena addressed by int offsets, so an item costs a few
+ * array slots instead of a String; Strings are only created for results that are displayed.
+ * <p>
+ * When created with a completions count, every node also stores its best completions by weight,
+ * so up to that many results are read straight from the node that ends the prefix and a lookup
+ * costs O(prefix length + limit). Larger limits, and every lookup without stored completions,
+ * rank the whole subtree below the prefix by weight.
+ * <p>
+ * {@link #searchFuzzy} runs a Levenshtein automaton over the trie, pruning every branch whose
+ * cheapest alignment already exceeds the allowed distance. {@link #searchInfix} finds matches
+ * anywhere in the text through a trigram index that is built on first use.
+ * <p>
+ * {@link #writeTo(File)} saves the index in the layout read by {@link SuggestionIndexFile},
+ * which answers queries straight from the mapped file.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SuggestionIndex {
+
+    static final int NO_NODE = -1;
+    static final int NO_ITEM = -1;
+    static final int ROOT = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_ITEMS = 1 << 24;
+
+    private final int mCompletions;
+
+    private char[] mLabel = new char[INITIAL_CAPACITY];
+    private int[] mParent = new int[INITIAL_CAPACITY];
+    private int[] mFirstChild = new int[INITIAL_CAPACITY];
+    private int[] mNextSibling = new int[INITIAL_CAPACITY];
+    private int[] mFirstItem = new int[INITIAL_CAPACITY];
+    private int mNodeCount;
+
+    private int[] mTopItems;
+    private int[] mTopCount;
+
+    private char[] mText = new char[INITIAL_CAPACITY * 8];
+    private int mTextLength;
+
+    private int[] mTextOffset = new int[INITIAL_CAPACITY + 1];
+    private int[] mWeights = new int[INITIAL_CAPACITY];
+    private int[] mItemNode = new int[INITIAL_CAPACITY];
+    private int[] mNextItem = new int[INITIAL_CAPACITY];
+    private int mItemCount;
+
+    private SuggestionTrigrams mTrigrams = null;
+
+    private int mModCount;
+    private int mClearedAt;
+    private final SuggestionSearch mSearch = new SuggestionSearch(new ArrayTrie());
+
+    public SuggestionIndex() {
+        this(0);
+    }
+
+    public SuggestionIndex(int completions) {
+        if (completions < 0) {
+            throw new IllegalArgumentException("completions < 0: " + completions);
+        }
+        mCompletions = completions;
+        if (completions > 0) {
+            mTopItems = new int[INITIAL_CAPACITY * completions];
+            mTopCount = new int[INITIAL_CAPACITY];
+        }
+        clear();
+    }
+
+    public SuggestionIndex(Iterable<? extends CharSequence> items) {
+        this();
+        addAll(items);
+    }
+
+    static char normalize(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    static String normalize(CharSequence text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            normalized.append(normalize(text.charAt(i)));
+        }
+        return normalized.toString();
+    }
+
+    public synchronized void clear() {
+        mModCount++;
+        mClearedAt = mModCount;
+        mItemCount = 0;
+        mTextLength = 0;
+        mTrigrams = null;
+        mNodeCount = 0;
+        newNode('\0');
+    }
+
+    public synchronized int size() {
+        return mItemCount;
+    }
+
+    public int getCompletions() {
+        return mCompletions;
+    }
+
+    public synchronized String getItem(int id) {
+        checkId(id);
+        return new String(mText, mTextOffset[id], mTextOffset[id + 1] - mTextOffset[id]);
+    }
+
+    public synchronized int getItemLength(int id) {
+        checkId(id);
+        return mTextOffset[id + 1] - mTextOffset[id];
+    }
+
+    public synchronized int getItemChars(int id, char[] dst, int dstOffset) {
+        checkId(id);
+        int length = mTextOffset[id + 1] - mTextOffset[id];
+        System.arraycopy(mText, mTextOffset[id], dst, dstOffset, length);
+        return length;
+    }
+
+    public synchronized int getWeight(int id) {
+        checkId(id);
+        return mWeights[id];
+    }
+
+    public synchronized void setWeight(int id, int weight) {
+        checkId(id);
+        if (mWeights[id] == weight) {
+            return;
+        }
+        boolean raised = weight > mWeights[id];
+        mWeights[id] = weight;
+        mModCount++;
+        if (mCompletions > 0) {
+            if (raised) {
+                offerPath(mItemNode[id], id);
+            } else {
+                rankPath(mItemNode[id]);
+            }
+        }
+    }
+
+    public synchronized void addAll(Iterable<? extends CharSequence> items) {
+        for (CharSequence item : items) {
+            add(item);
+        }
+    }
+
+    public synchronized int add(CharSequence text) {
+        return add(text, 0);
+    }
+
+    public synchronized int add(CharSequence text, int weight) {
+        int length = text.length();
+        ensureText(length);
+        for (int i = 0; i < length; i++) {
+            mText[mTextLength + i] = text.charAt(i);
+        }
+        return addText(length, weight);
+    }
+
+    public synchronized int add(char[] text, int offset, int length, int weight) {
+        ensureText(length);
+        System.arraycopy(text, offset, mText, mTextLength, length);
+        return addText(length, weight);
+    }
+
+    // releases the growth slack once a bulk load is done
+    public synchronized void trimToSize() {
+        mText = Arrays.copyOf(mText, mTextLength);
+        mTextOffset = Arrays.copyOf(mTextOffset, mItemCount + 1);
+        mWeights = Arrays.copyOf(mWeights, mItemCount);
+        mItemNode = Arrays.copyOf(mItemNode, mItemCount);
+        mNextItem = Arrays.copyOf(mNextItem, mItemCount);
+
+        mLabel = Arrays.copyOf(mLabel, mNodeCount);
+        mParent = Arrays.copyOf(mParent, mNodeCount);
+        mFirstChild = Arrays.copyOf(mFirstChild, mNodeCount);
+        mNextSibling = Arrays.copyOf(mNextSibling, mNodeCount);
+        mFirstItem = Arrays.copyOf(mFirstItem, mNodeCount);
+        if (mCompletions > 0) {
+            mTopItems = Arrays.copyOf(mTopItems, mNodeCount * mCompletions);
+            mTopCount = Arrays.copyOf(mTopCount, mNodeCount);
+        }
+    }
+
+    // written to a temporary file first, so readers never map a half written index
+    public synchronized void writeTo(File file) throws IOException {
+        SuggestionIndexFile.Layout layout = new SuggestionIndexFile.Layout(mCompletions, mNodeCount, mItemCount, mTextLength);
+        if (layout.mSize > Integer.MAX_VALUE) {
+            throw new IOException("Index too large to map: " + layout.mSize + " bytes");
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        try {
+            out.setLength(layout.mSize);
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, layout.mSize);
+            buffer.order(SuggestionIndexFile.ORDER);
+            buffer.putInt(0, SuggestionIndexFile.MAGIC);
+            buffer.putInt(4, SuggestionIndexFile.VERSION);
+            buffer.putInt(8, mCompletions);
+            buffer.putInt(12, mNodeCount);
+            buffer.putInt(16, mItemCount);
+            buffer.putInt(20, mTextLength);
+            section(buffer, layout.mLabel).asCharBuffer().put(mLabel, 0, mNodeCount);
+            section(buffer, layout.mFirstChild).asIntBuffer().put(mFirstChild, 0, mNodeCount);
+            section(buffer, layout.mNextSibling).asIntBuffer().put(mNextSibling, 0, mNodeCount);
+            section(buffer, layout.mFirstItem).asIntBuffer().put(mFirstItem, 0, mNodeCount);
+            if (mCompletions > 0) {
+                section(buffer, layout.mTopCount).asIntBuffer().put(mTopCount, 0, mNodeCount);
+                section(buffer, layout.mTopItems).asIntBuffer().put(mTopItems, 0, mNodeCount * mCompletions);
+            }
+            section(buffer, layout.mTextOffset).asIntBuffer().put(mTextOffset, 0, mItemCount + 1);
+            section(buffer, layout.mWeights).asIntBuffer().put(mWeights, 0, mItemCount);
+            section(buffer, layout.mNextItem).asIntBuffer().put(mNextItem, 0, mItemCount);
+            section(buffer, layout.mText).asCharBuffer().put(mText, 0, mTextLength);
+            buffer.force();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    public synchronized SuggestionResults search(CharSequence prefix, int limit) {
+        boolean traced = SearchTrace.begin("SuggestionIndex.search");
+        try {
+            return mSearch.search(prefix, limit);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    /**
+     * Returns items whose key starts with a string within {@code maxEdits} of the query, best
+     * matches first. A substitution between neighbouring keyboard keys costs half an edit.
+     */
+    public synchronized SuggestionResults searchFuzzy(CharSequence query, int maxEdits, int limit) {
+        boolean traced = SearchTrace.begin("SuggestionIndex.searchFuzzy");
+        try {
+            return mSearch.searchFuzzy(query, maxEdits, limit);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    /**
+     * Returns items containing the query anywhere in their text, by weight. Queries shorter than
+     * a trigram fall back to {@link #search}.
+     */
+    public synchronized SuggestionResults searchInfix(CharSequence query, int limit) {
+        int length = query.length();
+        if (length < SuggestionTrigrams.GRAM) {
+            return search(query, limit);
+        }
+        if (limit <= 0) {
+            return SuggestionResults.EMPTY;
+        }
+        // matchInfix may grow the candidates array, read it after it ran
+        int count = matchInfix(query);
+        return rankItems(query, matches(), count, limit);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    synchronized boolean matchesKey(int id, String key) {
+        int start = mTextOffset[id];
+        if (mTextOffset[id + 1] - start != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (normalize(mText[start + i]) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // also read by providers on the suggestion thread
+    synchronized int getModCount() {
+        return mModCount;
+    }
+
+    // ids from a lookup at modCount name other items, or none, once the index was cleared after it
+    synchronized boolean isClearedSince(int modCount) {
+        return mClearedAt > modCount;
+    }
+
+    // continues a prefix walk from a node reached by an earlier, shorter query
+    synchronized int walk(int node, CharSequence query, int from) {
+        return mSearch.walk(node, query, from);
+    }
+
+    synchronized SuggestionResults resultsAt(int node, int depth, int limit) {
+        return mSearch.resultsAt(node, depth, limit);
+    }
+
+    /**
+     * Writes the ids of all items containing the query to {@link #matches()}, in id order.
+     * The query must be at least a trigram long.
+     */
+    synchronized int matchInfix(CharSequence query) {
+        int length = query.length();
+        if (mTrigrams == null) {
+            mTrigrams = new SuggestionTrigrams();
+            for (int id = 0; id < mItemCount; id++) {
+                mTrigrams.add(id, mText, mTextOffset[id], mTextOffset[id + 1]);
+            }
+        }
+
+        // trigrams only narrow the candidates down, each one is still checked against the text
+        char[] normalized = mSearch.normalizeQuery(query);
+        int count = mTrigrams.intersect(normalized, length);
+        int[] candidates = mTrigrams.candidates();
+        int[] matches = mSearch.candidates(count);
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            if (mSearch.indexOf(candidates[i], normalized, length) >= 0) {
+                matches[matched++] = candidates[i];
+            }
+        }
+        return matched;
+    }
+
+    int[] matches() {
+        return mSearch.candidates(0);
+    }
+
+    // keeps, in place, the ids that still contain the longer query
+    synchronized int refineInfix(CharSequence query, int[] ids, int count) {
+        return mSearch.refineInfix(query, ids, count);
+    }
+
+    synchronized SuggestionResults rankItems(CharSequence query, int[] ids, int count, int limit) {
+        return mSearch.rankItems(query, ids, count, limit);
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int offset) {
+        ByteBuffer section = buffer.duplicate();
+        section.position(offset);
+        return section.slice().order(SuggestionIndexFile.ORDER);
+    }
+
+    private void ensureText(int length) {
+        if (mTextLength + length > mText.length) {
+            mText = Arrays.copyOf(mText, Math.max(mText.length * 2, mTextLength + length));
+        }
+    }
+
+    private int addText(int length, int weight) {
+        int start = mTextLength;
+        int node = ROOT;
+        for (int i = start; i < start + length; i++) {
+            node = child(node, normalize(mText[i]), true);
+        }
+        mTextLength += length;
+        mModCount++;
+
+        if (mItemCount == MAX_ITEMS) {
+            throw new IllegalStateException("Index is full: " + MAX_ITEMS + " items");
+        }
+        int id = mItemCount++;
+        if (id == mWeights.length) {
+            int capacity = Math.max(id * 2, INITIAL_CAPACITY);
+            mTextOffset = Arrays.copyOf(mTextOffset, capacity + 1);
+            mWeights = Arrays.copyOf(mWeights, capacity);
+            mItemNode = Arrays.copyOf(mItemNode, capacity);
+            mNextItem = Arrays.copyOf(mNextItem, capacity);
+        }
+        mTextOffset[id] = start;
+        mTextOffset[id + 1] = mTextLength;
+        mWeights[id] = weight;
+        mItemNode[id] = node;
+        if (mTrigrams != null) {
+            mTrigrams.add(id, mText, start, mTextLength);
+        }
+
+        // keep items of the same key in insertion order
+        mNextItem[id] = NO_ITEM;
+        if (mFirstItem[node] == NO_ITEM) {
+            mFirstItem[node] = id;
+        } else {
+            int last = mFirstItem[node];
+            while (mNextItem[last] != NO_ITEM) {
+                last = mNextItem[last];
+            }
+            mNextItem[last] = id;
+        }
+
+        if (mCompletions > 0) {
+            offerPath(node, id);
+        }
+        return id;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= mItemCount) {
+            throw new IndexOutOfBoundsException("id " + id + ", size " + mItemCount);
+        }
+    }
+
+    private void offerPath(int node, int item) {
+        for (; node != NO_NODE; node = mParent[node]) {
+            offer(node, item);
+        }
+    }
+
+    private void rankPath(int node) {
+        for (; node != NO_NODE; node = mParent[node]) {
+            mTopCount[node] = 0;
+            for (int item = mFirstItem[node]; item != NO_ITEM; item = mNextItem[item]) {
+                offer(node, item);
+            }
+            for (int child = mFirstChild[node]; child != NO_NODE; child = mNextSibling[child]) {
+                int base = child * mCompletions;
+                for (int i = 0; i < mTopCount[child]; i++) {
+                    offer(node, mTopItems[base + i]);
+                }
+            }
+        }
+    }
+
+    // keeps the node's completions sorted by weight, earlier items win ties
+    private void offer(int node, int item) {
+        int base = node * mCompletions;
+        int count = mTopCount[node];
+
+        int existing = -1;
+        for (int i = 0; i < count; i++) {
+            if (mTopItems[base + i] == item) {
+                existing = i;
+                break;
+            }
+        }
+        if (existing >= 0) {
+            System.arraycopy(mTopItems, base + existing + 1, mTopItems, base + existing, count - existing - 1);
+            count--;
+        }
+
+        int position = count;
+        while (position > 0 && ranksBefore(item, mTopItems[base + position - 1])) {
+            position--;
+        }
+        if (position >= mCompletions) {
+            mTopCount[node] = count;
+            return;
+        }
+        int moved = Math.min(count, mCompletions - 1) - position;
+        System.arraycopy(mTopItems, base + position, mTopItems, base + position + 1, moved);
+        mTopItems[base + position] = item;
+        mTopCount[node] = Math.min(count + 1, mCompletions);
+    }
+
+    private boolean ranksBefore(int item, int other) {
+        return mWeights[item] > mWeights[other] || (mWeights[item] == mWeights[other] && item < other);
+    }
+
+    private int child(int parent, char c, boolean create) {
+        int previous = NO_NODE;
+        int node = mFirstChild[parent];
+        while (node != NO_NODE && mLabel[node] < c) {
+            previous = node;
+            node = mNextSibling[node];
+        }
+        if (node != NO_NODE && mLabel[node] == c) {
+            return node;
+        }
+        if (!create) {
+            return NO_NODE;
+        }
+
+        int created = newNode(c);
+        mParent[created] = parent;
+        mNextSibling[created] = node;
+        if (previous == NO_NODE) {
+            mFirstChild[parent] = created;
+        } else {
+            mNextSibling[previous] = created;
+        }
+        return created;
+    }
+
+    private int newNode(char c) {
+        int node = mNodeCount++;
+        if (node == mLabel.length) {
+            int capacity = node * 2;
+            mLabel = Arrays.copyOf(mLabel, capacity);
+            mParent = Arrays.copyOf(mParent, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+            mFirstItem = Arrays.copyOf(mFirstItem, capacity);
+            if (mCompletions > 0) {
+                mTopItems = Arrays.copyOf(mTopItems, capacity * mCompletions);
+                mTopCount = Arrays.copyOf(mTopCount, capacity);
+            }
+        }
+        mLabel[node] = c;
+        mParent[node] = NO_NODE;
+        mFirstChild[node] = NO_NODE;
+        mNextSibling[node] = NO_NODE;
+        mFirstItem[node] = NO_ITEM;
+        if (mCompletions > 0) {
+            mTopCount[node] = 0;
+        }
+        return node;
+    }
+
+
+    // searched with the index's lock held
+    private class ArrayTrie implements SuggestionTrie {
+
+        @Override
+        public int itemCount() {
+            return mItemCount;
+        }
+
+        @Override
+        public int completions() {
+            return mCompletions;
+        }
+
+        @Override
+        public char label(int node) {
+            return mLabel[node];
+        }
+
+        @Override
+        public int firstChild(int node) {
+            return mFirstChild[node];
+        }
+
+        @Override
+        public int nextSibling(int node) {
+            return mNextSibling[node];
+        }
+
+        @Override
+        public int firstItem(int node) {
+            return mFirstItem[node];
+        }
+
+        @Override
+        public int topCount(int node) {
+            return mTopCount[node];
+        }
+
+        @Override
+        public int topItem(int node, int rank) {
+            return mTopItems[node * mCompletions + rank];
+        }
+
+        @Override
+        public int nextItem(int item) {
+            return mNextItem[item];
+        }
+
+        @Override
+        public int weight(int item) {
+            return mWeights[item];
+        }
+
+        @Override
+        public int textStart(int item) {
+            return mTextOffset[item];
+        }
+
+        @Override
+        public char text(int index) {
+            return mText[index];
+        }
+
+        @Override
+        public SuggestionResults results(int[] ids, int[] ranges, int count) {
+            return new SuggestionResults(SuggestionIndex.this, mModCount, ids, ranges, count);
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.lapism.searchview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Read-only {@link SuggestionIndex} mapped from a file written by
+ * {@link SuggestionIndex#writeTo(File)}. The file is memory-mapped and queried in place, so
+ * opening it costs a header check and only the texts of returned results are copied to the heap.
+ * <p>
+ * Layout, little-endian, version 1: a 32 byte header (magic, version, completions, node count,
+ * item count, text length, two reserved ints) followed by the node labels, first children,
+ * next siblings, first items, completion counts and completions, then the item text offsets,
+ * weights, next items and the text arena. Every section starts on a 4 byte boundary.
+ * <p>
+ * Infix lookups scan the mapped texts; load the data into a {@link SuggestionIndex} when large
+ * sets need the trigram index.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SuggestionIndexFile implements SuggestionProvider {
+
+    static final int MAGIC = 0x53564958; // SVIX
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final File mFile;
+    private final int mCompletions;
+    private final int mNodeCount;
+    private final int mItemCount;
+
+    private final CharBuffer mLabel;
+    private final IntBuffer mFirstChild;
+    private final IntBuffer mNextSibling;
+    private final IntBuffer mFirstItem;
+    private final IntBuffer mTopCount;
+    private final IntBuffer mTopItems;
+    private final IntBuffer mTextOffset;
+    private final IntBuffer mWeights;
+    private final IntBuffer mNextItem;
+    private final CharBuffer mText;
+
+    private final SuggestionSearch mSearch = new SuggestionSearch(new MappedTrie());
+
+    private SuggestionIndexFile(File file, ByteBuffer buffer) throws IOException {
+        mFile = file;
+        buffer.order(ORDER);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a suggestion index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+        }
+        mCompletions = buffer.getInt(8);
+        mNodeCount = buffer.getInt(12);
+        mItemCount = buffer.getInt(16);
+        int textLength = buffer.getInt(20);
+        if (mCompletions < 0 || mNodeCount < 1 || mItemCount < 0 || textLength < 0) {
+            throw new IOException(file + " is corrupt");
+        }
+        Layout layout = new Layout(mCompletions, mNodeCount, mItemCount, textLength);
+        if (layout.mSize != buffer.capacity()) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+
+        mLabel = slice(buffer, layout.mLabel, mNodeCount * 2).asCharBuffer();
+        mFirstChild = slice(buffer, layout.mFirstChild, mNodeCount * 4).asIntBuffer();
+        mNextSibling = slice(buffer, layout.mNextSibling, mNodeCount * 4).asIntBuffer();
+        mFirstItem = slice(buffer, layout.mFirstItem, mNodeCount * 4).asIntBuffer();
+        mTopCount = slice(buffer, layout.mTopCount, layout.mTopItems - layout.mTopCount).asIntBuffer();
+        mTopItems = slice(buffer, layout.mTopItems, layout.mTextOffset - layout.mTopItems).asIntBuffer();
+        mTextOffset = slice(buffer, layout.mTextOffset, (mItemCount + 1) * 4).asIntBuffer();
+        mWeights = slice(buffer, layout.mWeights, mItemCount * 4).asIntBuffer();
+        mNextItem = slice(buffer, layout.mNextItem, mItemCount * 4).asIntBuffer();
+        mText = slice(buffer, layout.mText, textLength * 2).asCharBuffer();
+    }
+
+    /**
+     * Maps the file read-only. The mapping outlives the channel and is released with this
+     * object, so there is nothing to close.
+     */
+    public static SuggestionIndexFile open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            return new SuggestionIndexFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int size() {
+        return mItemCount;
+    }
+
+    public int getCompletions() {
+        return mCompletions;
+    }
+
+    public synchronized String getItem(int id) {
+        checkId(id);
+        int start = mTextOffset.get(id);
+        int length = mTextOffset.get(id + 1) - start;
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = mText.get(start + i);
+        }
+        return new String(text);
+    }
+
+    public int getWeight(int id) {
+        checkId(id);
+        return mWeights.get(id);
+    }
+
+    @Override
+    public SuggestionResults getSuggestions(SuggestionRequest request) {
+        if (request.getMatchMode() == SuggestionRequest.MATCH_INFIX) {
+            return searchInfix(request.getQuery(), request.getLimit());
+        }
+        if (request.isFuzzy()) {
+            return searchFuzzy(request.getQuery(), SuggestionRequest.getFuzzyEdits(request.getQuery().length()), request.getLimit());
+        }
+        return search(request.getQuery(), request.getLimit());
+    }
+
+    public synchronized SuggestionResults search(CharSequence prefix, int limit) {
+        boolean traced = SearchTrace.begin("SuggestionIndexFile.search");
+        try {
+            return mSearch.search(prefix, limit);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    public synchronized SuggestionResults searchFuzzy(CharSequence query, int maxEdits, int limit) {
+        boolean traced = SearchTrace.begin("SuggestionIndexFile.searchFuzzy");
+        try {
+            return mSearch.searchFuzzy(query, maxEdits, limit);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    // scans every text, there is no trigram index in the file
+    public synchronized SuggestionResults searchInfix(CharSequence query, int limit) {
+        if (query.length() < SuggestionTrigrams.GRAM) {
+            return search(query, limit);
+        }
+        boolean traced = SearchTrace.begin("SuggestionIndexFile.searchInfix");
+        try {
+            return mSearch.scanInfix(query, limit);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer section = buffer.duplicate();
+        section.position(offset);
+        section.limit(offset + length);
+        return section.slice().order(ORDER);
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= mItemCount) {
+            throw new IndexOutOfBoundsException("id " + id + ", size " + mItemCount);
+        }
+    }
+
+    // searched with the file's lock held
+    private class MappedTrie implements SuggestionTrie {
+
+        @Override
+        public int itemCount() {
+            return mItemCount;
+        }
+
+        @Override
+        public int completions() {
+            return mCompletions;
+        }
+
+        @Override
+        public char label(int node) {
+            return mLabel.get(node);
+        }
+
+        @Override
+        public int firstChild(int node) {
+            return mFirstChild.get(node);
+        }
+
+        @Override
+        public int nextSibling(int node) {
+            return mNextSibling.get(node);
+        }
+
+        @Override
+        public int firstItem(int node) {
+            return mFirstItem.get(node);
+        }
+
+        @Override
+        public int topCount(int node) {
+            return mTopCount.get(node);
+        }
+
+        @Override
+        public int topItem(int node, int rank) {
+            return mTopItems.get(node * mCompletions + rank);
+        }
+
+        @Override
+        public int nextItem(int item) {
+            return mNextItem.get(item);
+        }
+
+        @Override
+        public int weight(int item) {
+            return mWeights.get(item);
+        }
+
+        @Override
+        public int textStart(int item) {
+            return mTextOffset.get(item);
+        }
+
+        @Override
+        public char text(int index) {
+            return mText.get(index);
+        }
+
+        @Override
+        public SuggestionResults results(int[] ids, int[] ranges, int count) {
+            CharSequence[] texts = new CharSequence[count];
+            for (int i = 0; i < count; i++) {
+                texts[i] = getItem(ids[i]);
+            }
+            return new SuggestionResults(ids, texts, ranges, count);
+        }
+    }
+
+
+    // byte offsets of every section, shared by the writer and the reader
+    static class Layout {
+
+        final int mLabel;
+        final int mFirstChild;
+        final int mNextSibling;
+        final int mFirstItem;
+        final int mTopCount;
+        final int mTopItems;
+        final int mTextOffset;
+        final int mWeights;
+        final int mNextItem;
+        final int mText;
+        final long mSize;
+
+        Layout(int completions, int nodes, int items, int textLength) {
+            long offset = HEADER_SIZE;
+            mLabel = (int) offset;
+            offset = align(offset + nodes * 2L);
+            mFirstChild = (int) offset;
+            offset += nodes * 4L;
+            mNextSibling = (int) offset;
+            offset += nodes * 4L;
+            mFirstItem = (int) offset;
+            offset += nodes * 4L;
+            mTopCount = (int) offset;
+            offset += completions > 0 ? nodes * 4L : 0;
+            mTopItems = (int) offset;
+            offset += (long) nodes * completions * 4L;
+            mTextOffset = (int) offset;
+            offset += (items + 1) * 4L;
+            mWeights = (int) offset;
+            offset += items * 4L;
+            mNextItem = (int) offset;
+            offset += items * 4L;
+            mText = (int) offset;
+            mSize = offset + textLength * 2L;
+        }
+
+        private static long align(long offset) {
+            return (offset + 3) & ~3L;
+        }
+    }
+
+}
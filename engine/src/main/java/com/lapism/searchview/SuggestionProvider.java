@@ -0,0 +1,15 @@
+package com.lapism.searchview;
+
+
+/**
+ * Source of suggestions for a {@link SearchView}. Called on a background thread, one request at a
+ * time on the default executor; an executor set with {@link SearchView#setSuggestionExecutor} may
+ * run several requests at once, so the provider must then be thread-safe. A request is cancelled
+ * as soon as a newer query arrives and its results are then dropped, as are requests whose
+ * provider throws.
+ */
+public interface SuggestionProvider {
+
+    SuggestionResults getSuggestions(SuggestionRequest request);
+
+}
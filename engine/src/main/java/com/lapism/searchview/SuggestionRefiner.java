@@ -0,0 +1,100 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+
+
+/**
+ * Remembers where the previous lookup ended. When the next query only appends characters, the
+ * prefix walk resumes from the previous node and infix matches are filtered in place instead of
+ * being looked up again.
+ */
+class SuggestionRefiner implements SuggestionProvider {
+
+    private final SuggestionIndex mIndex;
+
+    private char[] mQuery = new char[32];
+    private int mQueryLength = -1;
+    private int mMode;
+    private int mModCount;
+
+    private int mNode = SuggestionIndex.ROOT;
+    private int[] mMatches = new int[64];
+    private int mMatchCount = -1;
+
+    SuggestionRefiner(SuggestionIndex index) {
+        mIndex = index;
+    }
+
+    SuggestionIndex getIndex() {
+        return mIndex;
+    }
+
+    @Override
+    public SuggestionResults getSuggestions(SuggestionRequest request) {
+        return search(request.getQuery(), request.getMatchMode(), request.isFuzzy(), request.getLimit());
+    }
+
+    void reset() {
+        mQueryLength = -1;
+        mMatchCount = -1;
+    }
+
+    SuggestionResults search(CharSequence query, int mode, boolean fuzzy, int limit) {
+        synchronized (mIndex) {
+            if (mode == SuggestionRequest.MATCH_PREFIX && fuzzy) {
+                // the automaton already prunes everything out of reach, nothing to carry over
+                reset();
+                return mIndex.searchFuzzy(query, SuggestionRequest.getFuzzyEdits(query.length()), limit);
+            }
+
+            boolean refine = isRefinement(query, mode);
+            int from = refine ? mQueryLength : 0;
+            remember(query, mode);
+
+            if (mode == SuggestionRequest.MATCH_INFIX && query.length() >= SuggestionTrigrams.GRAM) {
+                if (refine && mMatchCount >= 0) {
+                    mMatchCount = mIndex.refineInfix(query, mMatches, mMatchCount);
+                } else {
+                    mMatchCount = mIndex.matchInfix(query);
+                    if (mMatchCount > mMatches.length) {
+                        mMatches = new int[Math.max(mMatches.length * 2, mMatchCount)];
+                    }
+                    System.arraycopy(mIndex.matches(), 0, mMatches, 0, mMatchCount);
+                }
+                return mIndex.rankItems(query, mMatches, mMatchCount, limit);
+            }
+
+            // short infix queries are served by the prefix walk, like SuggestionIndex.searchInfix
+            mMatchCount = -1;
+            mNode = mIndex.walk(refine ? mNode : SuggestionIndex.ROOT, query, from);
+            return mIndex.resultsAt(mNode, query.length(), limit);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private boolean isRefinement(CharSequence query, int mode) {
+        if (mQueryLength < 0 || mode != mMode || mModCount != mIndex.getModCount() || query.length() < mQueryLength) {
+            return false;
+        }
+        for (int i = 0; i < mQueryLength; i++) {
+            if (SuggestionIndex.normalize(query.charAt(i)) != mQuery[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remember(CharSequence query, int mode) {
+        int length = query.length();
+        if (length > mQuery.length) {
+            mQuery = Arrays.copyOf(mQuery, Math.max(mQuery.length * 2, length));
+        }
+        for (int i = 0; i < length; i++) {
+            mQuery[i] = SuggestionIndex.normalize(query.charAt(i));
+        }
+        mQueryLength = length;
+        mMode = mode;
+        mModCount = mIndex.getModCount();
+    }
+
+}
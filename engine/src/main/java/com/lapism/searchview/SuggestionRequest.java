@@ -0,0 +1,71 @@
+package com.lapism.searchview;
+
+
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SuggestionRequest {
+
+    // SearchView.MATCH_*, kept here so the engine does not depend on the view
+    static final int MATCH_PREFIX = 5000;
+    static final int MATCH_INFIX = 5001;
+
+    private final long mSequence;
+    private final String mQuery;
+    private final int mMatchMode;
+    private final boolean mFuzzy;
+    private final int mLimit;
+    private final int mModCount;
+    private volatile boolean mCancelled = false;
+
+    SuggestionRequest(long sequence, String query, int matchMode, boolean fuzzy, int limit, int modCount) {
+        mSequence = sequence;
+        mQuery = query;
+        mMatchMode = matchMode;
+        mFuzzy = fuzzy;
+        mLimit = limit;
+        mModCount = modCount;
+    }
+
+    // increases with every keystroke, a higher number always means a newer query
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public String getQuery() {
+        return mQuery;
+    }
+
+    public int getMatchMode() {
+        return mMatchMode;
+    }
+
+    public boolean isFuzzy() {
+        return mFuzzy;
+    }
+
+    public int getLimit() {
+        return mLimit;
+    }
+
+    // the index version the request was made against
+    int getModCount() {
+        return mModCount;
+    }
+
+    // long running providers should check this and give up early
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    void cancel() {
+        mCancelled = true;
+    }
+
+    // short queries would match almost anything with a typo allowed
+    static int getFuzzyEdits(int length) {
+        if (length < 3) {
+            return 0;
+        }
+        return length < 6 ? 1 : 2;
+    }
+
+}
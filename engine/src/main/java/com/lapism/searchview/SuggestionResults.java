@@ -0,0 +1,274 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+
+/**
+ * Ranked item ids returned by a {@link SuggestionIndex}. Texts are only created when asked for,
+ * which in practice means for the rows that get bound. Providers without an index can wrap
+ * plain texts with {@link #of(List)}. History rows, when present, come first.
+ * <p>
+ * Rows from the index carry the range of their text that matched the query, as found by the
+ * lookup itself, so it can be highlighted without searching the text again.
+ * <p>
+ * Results from an index hold ids into it, not texts. Adding items or changing weights leaves the
+ * texts of earlier results readable, but once the index is cleared their ids may name other items
+ * and reading a text throws {@link ConcurrentModificationException}. {@link #isCurrent()} tells
+ * whether the index changed at all since the lookup; results kept across changes should be checked
+ * before their texts are read.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SuggestionResults {
+
+    // declared first, EMPTY needs it during class initialization
+    private static final String[] NO_HISTORY = new String[0];
+
+    static final SuggestionResults EMPTY = new SuggestionResults(null, 0, new int[0], null, 0);
+
+    private final SuggestionIndex mIndex;
+    private final int mModCount;
+    private final CharSequence[] mTexts;
+    private final int[] mIds;
+    private final int[] mRanges;
+    private final int mCount;
+    private final String[] mHistory;
+    private final int mHistoryMatch;
+
+    // ranges hold a start and an end per id, modCount is the index's at the time of the lookup
+    SuggestionResults(SuggestionIndex index, int modCount, int[] ids, int[] ranges, int count) {
+        this(index, modCount, ids, null, ranges, count, NO_HISTORY, 0);
+    }
+
+    // ids with their texts already decoded, for sources that are not a SuggestionIndex
+    SuggestionResults(int[] ids, CharSequence[] texts, int[] ranges, int count) {
+        this(null, 0, ids, texts, ranges, count, NO_HISTORY, 0);
+    }
+
+    private SuggestionResults(SuggestionIndex index, int modCount, int[] ids, CharSequence[] texts, int[] ranges, int count, String[] history, int historyMatch) {
+        mIndex = index;
+        mModCount = modCount;
+        mIds = ids;
+        mTexts = texts;
+        mRanges = ranges;
+        mCount = count;
+        mHistory = history;
+        mHistoryMatch = historyMatch;
+    }
+
+    public static SuggestionResults of(List<? extends CharSequence> texts) {
+        return of(texts, null);
+    }
+
+    // ranges, when not null, hold the start and end of the match for every text
+    public static SuggestionResults of(List<? extends CharSequence> texts, int[] ranges) {
+        if (ranges != null && ranges.length < texts.size() * 2) {
+            throw new IllegalArgumentException("ranges.length < 2 * texts.size(): " + ranges.length);
+        }
+        return new SuggestionResults(null, 0, null, texts.toArray(new CharSequence[texts.size()]), ranges, texts.size(), NO_HISTORY, 0);
+    }
+
+    // false once the index the results came from changed, results with their texts are always current
+    public boolean isCurrent() {
+        return mIndex == null || mIndex.getModCount() == mModCount;
+    }
+
+    // false once the index was cleared after the lookup, the texts are gone then
+    boolean isReadable() {
+        return mIndex == null || !mIndex.isClearedSince(mModCount);
+    }
+
+    public int size() {
+        return mHistory.length + mCount;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getHistoryCount() {
+        return mHistory.length;
+    }
+
+    public boolean isHistory(int position) {
+        checkPosition(position);
+        return position < mHistory.length;
+    }
+
+    // id in the index, the position for results made of plain texts, -1 for history rows
+    public int getId(int position) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            return -1;
+        }
+        position -= mHistory.length;
+        return mIds == null ? position : mIds[position];
+    }
+
+    public String getText(int position) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            return mHistory[position];
+        }
+        position -= mHistory.length;
+        if (mTexts != null) {
+            return mTexts[position].toString();
+        }
+        synchronized (mIndex) {
+            checkIndex();
+            return mIndex.getItem(mIds[position]);
+        }
+    }
+
+    public int getTextLength(int position) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            return mHistory[position].length();
+        }
+        position -= mHistory.length;
+        if (mTexts != null) {
+            return mTexts[position].length();
+        }
+        synchronized (mIndex) {
+            checkIndex();
+            return mIndex.getItemLength(mIds[position]);
+        }
+    }
+
+    // copies the text without creating a String, dst must hold getTextLength(position) chars
+    public void getChars(int position, char[] dst, int dstOffset) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            mHistory[position].getChars(0, mHistory[position].length(), dst, dstOffset);
+            return;
+        }
+        position -= mHistory.length;
+        if (mTexts == null) {
+            synchronized (mIndex) {
+                checkIndex();
+                mIndex.getItemChars(mIds[position], dst, dstOffset);
+            }
+            return;
+        }
+        CharSequence text = mTexts[position];
+        for (int i = 0; i < text.length(); i++) {
+            dst[dstOffset + i] = text.charAt(i);
+        }
+    }
+
+    // start of the matched range, -1 when nothing is known about the match
+    public int getMatchStart(int position) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            return mHistoryMatch > 0 ? 0 : -1;
+        }
+        return mRanges == null ? -1 : mRanges[(position - mHistory.length) * 2];
+    }
+
+    public int getMatchEnd(int position) {
+        checkPosition(position);
+        if (position < mHistory.length) {
+            return mHistoryMatch > 0 ? Math.min(mHistoryMatch, mHistory[position].length()) : -1;
+        }
+        return mRanges == null ? -1 : mRanges[(position - mHistory.length) * 2 + 1];
+    }
+
+    public int[] toIdArray() {
+        int[] ids = new int[size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = getId(i);
+        }
+        return ids;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    /**
+     * Puts the history rows on top, drops suggestions that repeat one of them and cuts the whole
+     * list to the limit. History rows matched their first {@code historyMatch} chars.
+     */
+    SuggestionResults withHistory(List<String> history, int historyMatch, int limit) {
+        String[] rows = history.toArray(new String[history.size()]);
+        if (rows.length > limit) {
+            rows = Arrays.copyOf(rows, limit);
+        }
+        String[] keys = new String[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = SuggestionIndex.normalize(rows[i]);
+        }
+
+        int[] ids = mIds == null ? null : new int[mCount];
+        CharSequence[] texts = mTexts == null ? null : new CharSequence[mCount];
+        int[] ranges = mRanges == null ? null : new int[mCount * 2];
+        int count = 0;
+        for (int i = 0; i < mCount && rows.length + count < limit; i++) {
+            if (!isInHistory(i, keys)) {
+                if (ids != null) {
+                    ids[count] = mIds[i];
+                }
+                if (texts != null) {
+                    texts[count] = mTexts[i];
+                }
+                if (ranges != null) {
+                    ranges[count * 2] = mRanges[i * 2];
+                    ranges[count * 2 + 1] = mRanges[i * 2 + 1];
+                }
+                count++;
+            }
+        }
+        return new SuggestionResults(mIndex, mModCount, ids, texts, ranges, count, rows, historyMatch);
+    }
+
+    int estimateBytes() {
+        int bytes = 32;
+        if (mIds != null) {
+            bytes += mIds.length * 4;
+        }
+        if (mRanges != null) {
+            bytes += mRanges.length * 4;
+        }
+        if (mTexts != null) {
+            for (int i = 0; i < mCount; i++) {
+                bytes += 44 + mTexts[i].length() * 2;
+            }
+        }
+        for (String text : mHistory) {
+            bytes += 44 + text.length() * 2;
+        }
+        return bytes;
+    }
+
+    private boolean isInHistory(int i, String[] keys) {
+        if (mTexts != null) {
+            for (String key : keys) {
+                if (SuggestionIndex.normalize(mTexts[i]).equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        synchronized (mIndex) {
+            checkIndex();
+            for (String key : keys) {
+                if (mIndex.matchesKey(mIds[i], key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // callers hold the index lock, so it cannot be cleared between this check and the read
+    private void checkIndex() {
+        if (!isReadable()) {
+            throw new ConcurrentModificationException("The index was cleared after the lookup");
+        }
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size());
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+
+
+/**
+ * Prefix, fuzzy and infix lookups over a {@link SuggestionTrie}, shared by
+ * {@link SuggestionIndex} and {@link SuggestionIndexFile}. The scratch arrays and the heap are
+ * reused across queries, so calls must be serialized by the owner.
+ */
+class SuggestionSearch {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_EDITS = 2;
+
+    // costs are doubled so that a typo on a neighbouring key can cost half an edit
+    private static final int COST_EDIT = 2;
+    private static final int COST_ADJACENT = 1;
+
+    private final SuggestionTrie mTrie;
+
+    private char[] mQuery = new char[INITIAL_CAPACITY];
+    private int[] mStack = new int[INITIAL_CAPACITY];
+    private int[] mFuzzyNodes = new int[INITIAL_CAPACITY];
+    private int[] mFuzzyDepths = new int[INITIAL_CAPACITY];
+    private int[] mRows = new int[INITIAL_CAPACITY];
+    private int[] mAccepted = new int[INITIAL_CAPACITY];
+    private int[] mCandidates = new int[INITIAL_CAPACITY];
+    private final SuggestionHeap mHeap = new SuggestionHeap();
+
+    SuggestionSearch(SuggestionTrie trie) {
+        mTrie = trie;
+    }
+
+    SuggestionResults search(CharSequence prefix, int limit) {
+        return resultsAt(walk(SuggestionIndex.ROOT, prefix, 0), prefix.length(), limit);
+    }
+
+    // continues a prefix walk from a node reached by an earlier, shorter query
+    int walk(int node, CharSequence query, int from) {
+        for (int i = from; i < query.length() && node != SuggestionIndex.NO_NODE; i++) {
+            node = child(node, SuggestionIndex.normalize(query.charAt(i)));
+        }
+        return node;
+    }
+
+    // every completion of a node at this depth matches its first depth chars
+    SuggestionResults resultsAt(int node, int depth, int limit) {
+        if (node == SuggestionIndex.NO_NODE || limit <= 0) {
+            return SuggestionResults.EMPTY;
+        }
+        int max = Math.min(limit, mTrie.itemCount());
+        // the node only stores its best completions, rank the whole subtree when more are asked for
+        if (mTrie.completions() < max) {
+            mHeap.reset(max);
+            offerSubtree(node, 0, depth);
+            return ranked(0);
+        }
+        int[] ids = new int[max];
+        int count = completions(node, ids, max);
+        int[] ranges = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            ranges[i * 2 + 1] = depth;
+        }
+        return mTrie.results(ids, ranges, count);
+    }
+
+    SuggestionResults searchFuzzy(CharSequence query, int maxEdits, int limit) {
+        maxEdits = Math.max(0, Math.min(maxEdits, MAX_EDITS));
+        if (limit <= 0) {
+            return SuggestionResults.EMPTY;
+        }
+
+        int columns = query.length() + 1;
+        int threshold = maxEdits * COST_EDIT;
+        char[] normalized = normalizeQuery(query);
+
+        ensureRows(1, columns);
+        for (int j = 0; j < columns; j++) {
+            mRows[j] = j * COST_EDIT;
+        }
+        mHeap.reset(Math.min(limit, mTrie.itemCount()));
+        candidates(mHeap.capacity());
+        if (mRows[columns - 1] <= threshold) {
+            mAccepted[0] = mRows[columns - 1];
+            accept(SuggestionIndex.ROOT, mAccepted[0], 0);
+        } else {
+            mAccepted[0] = Integer.MAX_VALUE;
+        }
+
+        // pre-order walk, so the row of a node's parent is always the one a level above
+        int top = 0;
+        int first = mTrie.firstChild(SuggestionIndex.ROOT);
+        if (first != SuggestionIndex.NO_NODE) {
+            mFuzzyNodes[top] = first;
+            mFuzzyDepths[top++] = 1;
+        }
+        while (top > 0) {
+            int node = mFuzzyNodes[--top];
+            int depth = mFuzzyDepths[top];
+            int sibling = mTrie.nextSibling(node);
+            if (sibling != SuggestionIndex.NO_NODE) {
+                mFuzzyNodes[top] = sibling;
+                mFuzzyDepths[top++] = depth;
+            }
+
+            ensureRows(depth + 1, columns);
+            int previous = (depth - 1) * columns;
+            int current = depth * columns;
+            char c = mTrie.label(node);
+            int min = mRows[current] = mRows[previous] + COST_EDIT;
+            for (int j = 1; j < columns; j++) {
+                char q = normalized[j - 1];
+                int substitute = mRows[previous + j - 1] + (q == c ? 0 : SearchKeyboard.isAdjacent(q, c) ? COST_ADJACENT : COST_EDIT);
+                int insert = mRows[previous + j] + COST_EDIT;
+                int delete = mRows[current + j - 1] + COST_EDIT;
+                int cost = Math.min(substitute, Math.min(insert, delete));
+                mRows[current + j] = cost;
+                min = Math.min(min, cost);
+            }
+            if (min > threshold) {
+                continue;
+            }
+
+            // a subtree is only collected again when it matches cheaper than an ancestor did
+            int cost = mRows[current + columns - 1];
+            mAccepted[depth] = mAccepted[depth - 1];
+            if (cost <= threshold && cost < mAccepted[depth]) {
+                mAccepted[depth] = cost;
+                accept(node, cost, depth);
+            }
+
+            int child = mTrie.firstChild(node);
+            if (child != SuggestionIndex.NO_NODE) {
+                if (top + 2 > mFuzzyNodes.length) {
+                    mFuzzyNodes = Arrays.copyOf(mFuzzyNodes, mFuzzyNodes.length * 2);
+                    mFuzzyDepths = Arrays.copyOf(mFuzzyDepths, mFuzzyDepths.length * 2);
+                }
+                mFuzzyNodes[top] = child;
+                mFuzzyDepths[top++] = depth + 1;
+            }
+        }
+        return ranked(0);
+    }
+
+    // checks every text, for storage without a trigram index
+    SuggestionResults scanInfix(CharSequence query, int limit) {
+        int length = query.length();
+        if (limit <= 0) {
+            return SuggestionResults.EMPTY;
+        }
+        char[] normalized = normalizeQuery(query);
+        int items = mTrie.itemCount();
+        mHeap.reset(Math.min(limit, items));
+        for (int id = 0; id < items; id++) {
+            int start = indexOf(id, normalized, length);
+            if (start >= 0) {
+                mHeap.offer(rankKey(0, id), start);
+            }
+        }
+        return ranked(length);
+    }
+
+    // keeps, in place, the ids that still contain the longer query
+    int refineInfix(CharSequence query, int[] ids, int count) {
+        int length = query.length();
+        char[] normalized = normalizeQuery(query);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (indexOf(ids[i], normalized, length) >= 0) {
+                ids[kept++] = ids[i];
+            }
+        }
+        return kept;
+    }
+
+    // the match offsets are only looked up again for the items that made it
+    SuggestionResults rankItems(CharSequence query, int[] ids, int count, int limit) {
+        boolean traced = SearchTrace.begin("SuggestionSearch.rankItems");
+        try {
+            if (limit <= 0) {
+                return SuggestionResults.EMPTY;
+            }
+            mHeap.reset(Math.min(limit, mTrie.itemCount()));
+            for (int i = 0; i < count; i++) {
+                mHeap.offer(rankKey(0, ids[i]), 0);
+            }
+            int[] ranked = new int[mHeap.size()];
+            int ranks = mHeap.drain(ranked, null);
+            int length = query.length();
+            char[] normalized = normalizeQuery(query);
+            int[] ranges = new int[ranks * 2];
+            for (int i = 0; i < ranks; i++) {
+                ranges[i * 2] = indexOf(ranked[i], normalized, length);
+                ranges[i * 2 + 1] = ranges[i * 2] + length;
+            }
+            return mTrie.results(ranked, ranges, ranks);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    char[] normalizeQuery(CharSequence query) {
+        if (query.length() > mQuery.length) {
+            mQuery = new char[Math.max(mQuery.length * 2, query.length())];
+        }
+        for (int i = 0; i < query.length(); i++) {
+            mQuery[i] = SuggestionIndex.normalize(query.charAt(i));
+        }
+        return mQuery;
+    }
+
+    // offset of the normalized query in the text of the item, -1 when it is not there
+    int indexOf(int item, char[] query, int length) {
+        int start = mTrie.textStart(item);
+        int last = mTrie.textStart(item + 1) - length;
+        for (int i = start; i <= last; i++) {
+            int j = 0;
+            while (j < length && SuggestionIndex.normalize(mTrie.text(i + j)) == query[j]) {
+                j++;
+            }
+            if (j == length) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    // scratch ids, valid until the next lookup
+    int[] candidates(int size) {
+        if (size > mCandidates.length) {
+            int capacity = Math.max(mCandidates.length * 2, size);
+            mCandidates = Arrays.copyOf(mCandidates, capacity);
+        }
+        return mCandidates;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private int child(int parent, char c) {
+        int node = mTrie.firstChild(parent);
+        while (node != SuggestionIndex.NO_NODE && mTrie.label(node) < c) {
+            node = mTrie.nextSibling(node);
+        }
+        return node != SuggestionIndex.NO_NODE && mTrie.label(node) == c ? node : SuggestionIndex.NO_NODE;
+    }
+
+    private int completions(int node, int[] ids, int max) {
+        int count = Math.min(max, mTrie.topCount(node));
+        for (int i = 0; i < count; i++) {
+            ids[i] = mTrie.topItem(node, i);
+        }
+        return count;
+    }
+
+    // offers every item below the node, its own included
+    private void offerSubtree(int node, int cost, int payload) {
+        offerItems(node, cost, payload);
+        int top = 0;
+        int first = mTrie.firstChild(node);
+        if (first != SuggestionIndex.NO_NODE) {
+            mStack[top++] = first;
+        }
+        while (top > 0) {
+            int current = mStack[--top];
+            offerItems(current, cost, payload);
+            if (top + 2 > mStack.length) {
+                mStack = Arrays.copyOf(mStack, mStack.length * 2);
+            }
+            int sibling = mTrie.nextSibling(current);
+            if (sibling != SuggestionIndex.NO_NODE) {
+                mStack[top++] = sibling;
+            }
+            int child = mTrie.firstChild(current);
+            if (child != SuggestionIndex.NO_NODE) {
+                mStack[top++] = child;
+            }
+        }
+    }
+
+    private void offerItems(int node, int cost, int payload) {
+        for (int item = mTrie.firstItem(node); item != SuggestionIndex.NO_ITEM; item = mTrie.nextItem(item)) {
+            mHeap.offer(rankKey(cost, item), payload);
+        }
+    }
+
+    // every item below the node matches at this cost, the stored ones only suffice when they fill the heap
+    private void accept(int node, int cost, int depth) {
+        if (mTrie.completions() < mHeap.capacity()) {
+            offerSubtree(node, cost, depth);
+            return;
+        }
+        int count = completions(node, mCandidates, mHeap.capacity());
+        for (int i = 0; i < count; i++) {
+            mHeap.offer(rankKey(cost, mCandidates[i]), depth);
+        }
+    }
+
+    // cost first, then weight, then insertion order; the low 24 bits keep the id
+    private long rankKey(int cost, int item) {
+        long weight = (long) Integer.MAX_VALUE - mTrie.weight(item);
+        return ((long) cost << 56) | (weight << 24) | item;
+    }
+
+    // payloads are match starts for infix lookups, else match lengths from the start of the text
+    private SuggestionResults ranked(int infixLength) {
+        int[] ids = new int[mHeap.size()];
+        int[] ranges = new int[ids.length * 2];
+        int count = mHeap.drain(ids, ranges);
+        // spread the payloads at the front into pairs, back to front so none is overwritten
+        for (int i = count - 1; i >= 0; i--) {
+            int payload = ranges[i];
+            ranges[i * 2] = infixLength > 0 ? payload : 0;
+            ranges[i * 2 + 1] = infixLength > 0 ? payload + infixLength : payload;
+        }
+        return mTrie.results(ids, ranges, count);
+    }
+
+    private void ensureRows(int rows, int columns) {
+        if (rows * columns > mRows.length) {
+            mRows = Arrays.copyOf(mRows, Math.max(mRows.length * 2, rows * columns));
+        }
+        if (rows > mAccepted.length) {
+            mAccepted = Arrays.copyOf(mAccepted, Math.max(mAccepted.length * 2, rows));
+        }
+    }
+
+}
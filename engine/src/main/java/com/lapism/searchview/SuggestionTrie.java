@@ -0,0 +1,42 @@
+package com.lapism.searchview;
+
+
+/**
+ * Read access to the storage of a suggestion trie: nodes, per-node completions, item weights and
+ * the text arena. {@link SuggestionIndex} keeps it in arrays, {@link SuggestionIndexFile} in a
+ * mapped file; both are searched by the same {@link SuggestionSearch}.
+ * <p>
+ * Nodes and items are ids, {@link SuggestionIndex#NO_NODE} and {@link SuggestionIndex#NO_ITEM}
+ * end the sibling and item lists.
+ */
+interface SuggestionTrie {
+
+    int itemCount();
+
+    // stored completions per node, 0 when none are stored
+    int completions();
+
+    char label(int node);
+
+    int firstChild(int node);
+
+    int nextSibling(int node);
+
+    int firstItem(int node);
+
+    int topCount(int node);
+
+    int topItem(int node, int rank);
+
+    int nextItem(int item);
+
+    int weight(int item);
+
+    // the text of an item spans textStart(item) to textStart(item + 1) in the arena
+    int textStart(int item);
+
+    char text(int index);
+
+    SuggestionResults results(int[] ids, int[] ranges, int count);
+
+}
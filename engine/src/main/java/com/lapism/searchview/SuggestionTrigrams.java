@@ -0,0 +1,167 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+
+
+/**
+ * Inverted index from case-folded trigrams to the sorted ids of the items containing them.
+ * Keys live in an open addressing table of longs, postings in plain int arrays.
+ */
+class SuggestionTrigrams {
+
+    static final int GRAM = 3;
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_POSTINGS = 4;
+
+    private long[] mKeys = newKeys(INITIAL_CAPACITY);
+    private int[][] mPostings = new int[INITIAL_CAPACITY][];
+    private int[] mSizes = new int[INITIAL_CAPACITY];
+    private int mCount;
+
+    private int[][] mQueryPostings = new int[8][];
+    private int[] mQuerySizes = new int[8];
+    private int[] mCandidates = new int[INITIAL_CAPACITY];
+
+    void add(int id, char[] text, int start, int end) {
+        for (int i = start; i + GRAM <= end; i++) {
+            int slot = slot(key(text, i), true);
+            int size = mSizes[slot];
+            int[] postings = mPostings[slot];
+            // ids only grow, so a repeated trigram of the same item is always the last entry
+            if (size > 0 && postings[size - 1] == id) {
+                continue;
+            }
+            if (size == postings.length) {
+                postings = mPostings[slot] = Arrays.copyOf(postings, size * 2);
+            }
+            postings[size] = id;
+            mSizes[slot] = size + 1;
+        }
+    }
+
+    int[] candidates() {
+        return mCandidates;
+    }
+
+    // intersects the postings of every query trigram, smallest list first, into candidates()
+    int intersect(char[] query, int length) {
+        int grams = length - GRAM + 1;
+        if (grams <= 0) {
+            return 0;
+        }
+        if (grams > mQueryPostings.length) {
+            mQueryPostings = new int[grams][];
+            mQuerySizes = new int[grams];
+        }
+
+        int lists = 0;
+        for (int i = 0; i < grams; i++) {
+            int slot = slot(key(query, i), false);
+            if (slot < 0) {
+                return 0;
+            }
+            mQueryPostings[lists] = mPostings[slot];
+            mQuerySizes[lists++] = mSizes[slot];
+        }
+
+        int smallest = 0;
+        for (int i = 1; i < lists; i++) {
+            if (mQuerySizes[i] < mQuerySizes[smallest]) {
+                smallest = i;
+            }
+        }
+        if (mCandidates.length < mQuerySizes[smallest]) {
+            mCandidates = new int[mQuerySizes[smallest]];
+        }
+        int[] out = mCandidates;
+        int count = mQuerySizes[smallest];
+        System.arraycopy(mQueryPostings[smallest], 0, out, 0, count);
+
+        for (int i = 0; i < lists && count > 0; i++) {
+            if (i == smallest) {
+                continue;
+            }
+            int[] postings = mQueryPostings[i];
+            int size = mQuerySizes[i];
+            int kept = 0;
+            int from = 0;
+            for (int k = 0; k < count; k++) {
+                int found = Arrays.binarySearch(postings, from, size, out[k]);
+                if (found >= 0) {
+                    out[kept++] = out[k];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+            count = kept;
+        }
+        return count;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static long key(char[] text, int i) {
+        return ((long) SuggestionIndex.normalize(text[i]) << 32)
+                | ((long) SuggestionIndex.normalize(text[i + 1]) << 16)
+                | SuggestionIndex.normalize(text[i + 2]);
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        return keys;
+    }
+
+    private int slot(long key, boolean create) {
+        int mask = mKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (mKeys[slot] != EMPTY_KEY) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        if ((mCount + 1) * 4 > mKeys.length * 3) {
+            rehash();
+            return slot(key, true);
+        }
+        mKeys[slot] = key;
+        mPostings[slot] = new int[INITIAL_POSTINGS];
+        mSizes[slot] = 0;
+        mCount++;
+        return slot;
+    }
+
+    private void rehash() {
+        long[] keys = mKeys;
+        int[][] postings = mPostings;
+        int[] sizes = mSizes;
+
+        mKeys = newKeys(keys.length * 2);
+        mPostings = new int[keys.length * 2][];
+        mSizes = new int[keys.length * 2];
+        int mask = mKeys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                int slot = mix(keys[i]) & mask;
+                while (mKeys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                mKeys[slot] = keys[i];
+                mPostings[slot] = postings[i];
+                mSizes[slot] = sizes[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -17,6 +17,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.Toast;
 
+import com.lapism.searchview.SearchHistoryStore;
 import com.lapism.searchview.SearchView;
 import com.lapism.searchview.sample.R;
 import com.lapism.searchview.sample.activity.AboutActivity;
@@ -27,6 +28,7 @@ import com.lapism.searchview.sample.activity.ToolbarActivity;
 import com.lapism.searchview.sample.view.FragmentAdapter;
 import com.lapism.searchview.sample.view.SearchFragment;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,6 +45,8 @@ public abstract class BaseActivity extends AppCompatActivity implements Navigati
     protected static final int NAV_ITEM_TOGGLE = 4;
     private static final String EXTRA_KEY_VERSION_MARGINS = "version_margins";
     private static final String EXTRA_KEY_TEXT = "text";
+    // one store per file, every activity shares it
+    private static SearchHistoryStore sHistoryStore = null;
     protected SearchView mSearchView = null;
     protected DrawerLayout mDrawerLayout = null;
     protected Toolbar mToolbar = null;
@@ -157,6 +161,7 @@ public abstract class BaseActivity extends AppCompatActivity implements Navigati
             mFab.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
+                    getHistoryStore().clear();
                     Snackbar.make(v, "Search history deleted", Snackbar.LENGTH_LONG).setAction("Action", null).show();
                 }
             });
@@ -218,7 +223,15 @@ public abstract class BaseActivity extends AppCompatActivity implements Navigati
         }
     }
 
+    protected SearchHistoryStore getHistoryStore() {
+        if (sHistoryStore == null) {
+            sHistoryStore = new SearchHistoryStore(new File(getApplicationContext().getFilesDir(), "search_history"));
+        }
+        return sHistoryStore;
+    }
+
     protected void setSearchView() {
+        SearchView.preloadSuggestionRows(this, SearchView.SUGGESTIONS_LIMIT);
         mSearchView = (SearchView) findViewById(R.id.searchView);
         if (mSearchView != null) {
             mSearchView.setVersion(SearchView.VERSION_TOOLBAR);
@@ -228,6 +241,7 @@ public abstract class BaseActivity extends AppCompatActivity implements Navigati
             mSearchView.setHint("Search");
             mSearchView.setAnimationDuration(SearchView.ANIMATION_DURATION);
             mSearchView.setShadowColor(ContextCompat.getColor(this, R.color.search_shadow_layout));
+            mSearchView.setSearchHistoryStore(getHistoryStore());
             mSearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
                 @Override
                 public boolean onQueryTextSubmit(String query) {
@@ -0,0 +1,293 @@
+package com.lapism.searchview;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.nio.CharBuffer;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.Executor;
+
+
+class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.ResultViewHolder> {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // hands the row's own buffer to the TextView instead of copying it
+    private static final Spannable.Factory sSpannableFactory = new Spannable.Factory() {
+        @Override
+        public Spannable newSpannable(CharSequence source) {
+            return source instanceof Spannable ? (Spannable) source : super.newSpannable(source);
+        }
+    };
+
+    private SuggestionResults mResults = SuggestionResults.EMPTY;
+    private SuggestionResults mPendingResults = null;
+    private OnItemClickListener mOnItemClickListener = null;
+    private Executor mExecutor = null;
+    private int mViewType = 0;
+    private int mIconColor = Color.BLACK;
+    private int mTextColor = Color.BLACK;
+    private int mTextHighlightColor = Color.BLACK;
+    // built on the first bind after a colour change and shared by every row
+    private ColorFilter mIconFilter = null;
+    private ColorStateList mTextColors = null;
+
+    // one of SearchItemPool.getViewType, it picks the theme rows are inflated with
+    void setViewType(int viewType) {
+        mViewType = viewType;
+    }
+
+    // colours of the SearchView the rows are shown in, rows already bound are bound again
+    void setIconColor(int color) {
+        if (mIconColor != color) {
+            mIconColor = color;
+            mIconFilter = null;
+            notifyColorChanged();
+        }
+    }
+
+    void setTextColor(int color) {
+        if (mTextColor != color) {
+            mTextColor = color;
+            mTextColors = null;
+            notifyColorChanged();
+        }
+    }
+
+    void setTextHighlightColor(int color) {
+        if (mTextHighlightColor != color) {
+            mTextHighlightColor = color;
+            notifyColorChanged();
+        }
+    }
+
+    void setOnItemClickListener(OnItemClickListener listener) {
+        mOnItemClickListener = listener;
+    }
+
+    // diffs run here, without one they run on the main thread
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Shows the new results once their difference to the current ones is known; only the rows
+     * that changed are rebound and the item animator sees real inserts, removals and moves.
+     * Rows looked up before their index changed are replaced as a whole, their texts may be gone.
+     */
+    void setResults(final SuggestionResults results) {
+        final SuggestionResults current = mResults;
+        mPendingResults = results;
+        if (current.isEmpty() || results.isEmpty() || !current.isCurrent() || !results.isCurrent()) {
+            apply(results, null);
+            return;
+        }
+        if (mExecutor == null) {
+            apply(results, diff(current, results));
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final SuggestionDiff diff = diff(current, results);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // a newer list or a clear got in first, its own diff is on the way
+                        if (mPendingResults == results && mResults == current) {
+                            apply(results, diff);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    void clear() {
+        setResults(SuggestionResults.EMPTY);
+    }
+
+    private void notifyColorChanged() {
+        if (!mResults.isEmpty()) {
+            notifyItemRangeChanged(0, mResults.size());
+        }
+    }
+
+    // null when the index was cleared while the texts were read
+    private static SuggestionDiff diff(SuggestionResults current, SuggestionResults results) {
+        boolean traced = SearchTrace.begin("SearchAdapter.diff");
+        try {
+            return SuggestionDiff.compute(current, results);
+        } catch (ConcurrentModificationException e) {
+            return null;
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    // without a diff the rows are removed, inserted or, when there are old and new ones, replaced
+    private void apply(SuggestionResults results, SuggestionDiff diff) {
+        SuggestionResults previous = mResults;
+        mResults = results;
+        mPendingResults = null;
+        if (diff != null) {
+            diff.dispatchTo(this);
+        } else if (!previous.isEmpty() && !results.isEmpty()) {
+            notifyDataSetChanged();
+        } else if (!previous.isEmpty()) {
+            notifyItemRangeRemoved(0, previous.size());
+        } else if (!results.isEmpty()) {
+            notifyItemRangeInserted(0, results.size());
+        }
+    }
+
+    // rows go to the shared SearchItemPool, they must not hold on to an Activity
+    @Override
+    public ResultViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        boolean traced = SearchTrace.begin("SearchAdapter.onCreateViewHolder");
+        try {
+            Context context = SearchItemPool.getContext(viewType);
+            if (context == null) {
+                context = parent.getContext().getApplicationContext();
+            }
+            View view = LayoutInflater.from(context).inflate(R.layout.search_item, parent, false);
+            return new ResultViewHolder(view);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(ResultViewHolder holder, int position) {
+        boolean traced = SearchTrace.begin("SearchAdapter.onBindViewHolder");
+        try {
+            holder.mAdapter = this;
+            holder.mIconLeft.setImageResource(mResults.isHistory(position) ? R.drawable.search_ic_history_black_24dp : R.drawable.search_ic_search_black_24dp);
+            if (mIconFilter == null) {
+                mIconFilter = new PorterDuffColorFilter(mIconColor, PorterDuff.Mode.SRC_ATOP);
+            }
+            if (mTextColors == null) {
+                mTextColors = ColorStateList.valueOf(mTextColor);
+            }
+            holder.bindColors(mIconFilter, mTextColors);
+            holder.bindText(mResults, position, mTextHighlightColor);
+        } finally {
+            SearchTrace.end(traced);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mResults.size();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mViewType;
+    }
+
+    @Override
+    public void onViewRecycled(ResultViewHolder holder) {
+        holder.mAdapter = null;
+    }
+
+    interface OnItemClickListener {
+        void onItemClick(View view, CharSequence text);
+    }
+
+    // static, a pooled row is bound by whichever SearchView takes it next
+    static class ResultViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final ImageView mIconLeft;
+        final ImageView mIconRight;
+        final TextView mText;
+
+        private final SpannableStringBuilder mTextBuffer = new SpannableStringBuilder();
+        private char[] mChars = new char[32];
+        private CharBuffer mCharBuffer = CharBuffer.wrap(mChars);
+        private ForegroundColorSpan mHighlightSpan = null;
+        private ColorFilter mIconFilter = null;
+        private SearchAdapter mAdapter = null;
+
+        ResultViewHolder(View view) {
+            super(view);
+            mIconLeft = (ImageView) view.findViewById(R.id.imageView_item_icon_left);
+            mIconRight = (ImageView) view.findViewById(R.id.imageView_item_icon_right);
+            mText = (TextView) view.findViewById(R.id.textView_item_text);
+            mText.setSpannableFactory(sSpannableFactory);
+            view.setOnClickListener(this);
+        }
+
+        // a pooled row keeps its colours, they are only set again when its adapter's differ
+        void bindColors(ColorFilter iconFilter, ColorStateList textColors) {
+            if (mIconFilter != iconFilter) {
+                mIconLeft.setColorFilter(iconFilter);
+                mIconFilter = iconFilter;
+            }
+            if (mText.getTextColors() != textColors) {
+                mText.setTextColor(textColors);
+            }
+        }
+
+        /**
+         * Copies the text into the row's buffer and moves the row's highlight span over the
+         * match. The TextView watches the buffer after the first bind, so later binds only edit
+         * it and nothing is allocated unless a text outgrows the buffer or the colour changes.
+         */
+        void bindText(SuggestionResults results, int position, int color) {
+            int length = results.getTextLength(position);
+            if (length > mChars.length) {
+                mChars = new char[Math.max(length, mChars.length * 2)];
+                mCharBuffer = CharBuffer.wrap(mChars);
+            }
+            results.getChars(position, mChars, 0);
+            mCharBuffer.clear();
+            mCharBuffer.limit(length);
+            mTextBuffer.replace(0, mTextBuffer.length(), mCharBuffer);
+
+            int start = results.getMatchStart(position);
+            int end = Math.min(results.getMatchEnd(position), length);
+            if (mHighlightSpan != null && (start < 0 || end <= start || mHighlightSpan.getForegroundColor() != color)) {
+                mTextBuffer.removeSpan(mHighlightSpan);
+                if (mHighlightSpan.getForegroundColor() != color) {
+                    mHighlightSpan = null;
+                }
+            }
+            if (start >= 0 && end > start) {
+                if (mHighlightSpan == null) {
+                    mHighlightSpan = new ForegroundColorSpan(color);
+                }
+                mTextBuffer.setSpan(mHighlightSpan, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+
+            if (mText.getText() != mTextBuffer) {
+                mText.setText(mTextBuffer, TextView.BufferType.SPANNABLE);
+            }
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (mAdapter != null && mAdapter.mOnItemClickListener != null && position != RecyclerView.NO_POSITION) {
+                mAdapter.mOnItemClickListener.onItemClick(v, mAdapter.mResults.getText(position));
+            }
+        }
+    }
+
+}
@@ -1,195 +1,400 @@
 package com.lapism.searchview;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
+import android.animation.TimeInterpolator;
 import android.annotation.TargetApi;
-import android.content.Context;
 import android.os.Build;
+import android.support.v4.view.ViewCompat;
 import android.view.View;
 import android.view.ViewAnimationUtils;
 import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.AlphaAnimation;
-import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
+
+
+/**
+ * Open, close and shadow animations of one SearchView. The animators and their listeners are
+ * created once; starting an animation cancels the one in flight and carries on from where it
+ * stopped, so quick open/close toggles reverse smoothly instead of piling up.
+ * <p>
+ * For the length of a transition the animated view is drawn from a hardware layer, so the card
+ * with its list and the full-screen shadow are not redrawn every frame. A reversal keeps the
+ * layer, it is released when the view comes to rest.
+ */
+class SearchAnimator {
 
+    private static final TimeInterpolator sInterpolator = new AccelerateDecelerateInterpolator();
+
+    private final SearchView mSearchView;
+    private final View mCardView;
+    private final View mShadowView;
+    private final ObjectAnimator mCardFade;
+    private final ObjectAnimator mShadowFade;
+
+    // reveal geometry, measured again only when the card width changes
+    private final int mRevealPadding;
+    private final int mRevealCenterY;
+    private int mRevealWidth = 0;
+    private int mRevealCenterX = 0;
+    private float mRevealRadius = 0;
+
+    // circular reveals cannot be restarted, a running one is tracked to reverse it
+    private Animator mReveal = null;
+    private long mRevealStartTime = 0;
+    private long mRevealDuration = 0;
+    private float mRevealFrom = 0;
+    private float mRevealTo = 0;
+
+    private final Transition mCardTransition;
+    private final Transition mShadowTransition;
+    private boolean mHardwareLayers = true;
+    private SearchView.OnTransitionListener mTransitionListener = null;
+    private SearchFrameMonitor mFrameMonitor = null;
+
+    private boolean mOpening = false;
+    private boolean mShadowShowing = false;
+    // set when an open reverses a close that never finished, onOpen was already dispatched
+    private boolean mSkipOpenStart = false;
+
+    private final Animator.AnimatorListener mCardListener = new AnimatorListenerAdapter() {
+        private boolean mCancelled;
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            mCancelled = false;
+            if (mOpening) {
+                onOpenStart();
+            } else {
+                onCloseStart();
+            }
+        }
 
-class SearchAnimator {
+        @Override
+        public void onAnimationCancel(Animator animation) {
+            if (isCurrent(animation)) {
+                mCancelled = true;
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!isCurrent(animation)) {
+                return;
+            }
+            if (animation == mReveal) {
+                mReveal = null;
+            }
+            if (mCancelled) {
+                return;
+            }
+            mCardTransition.finish(false);
+            if (mOpening) {
+                onOpenEnd();
+            } else {
+                onCloseEnd();
+            }
+        }
+    };
 
-    static void fadeIn(View view, int duration) {
-        Animation anim = new AlphaAnimation(0.0f, 1.0f);
-        anim.setInterpolator(new AccelerateDecelerateInterpolator());
-        anim.setDuration(duration);
+    private final Animator.AnimatorListener mShadowListener = new AnimatorListenerAdapter() {
+        private boolean mCancelled;
 
-        view.setAnimation(anim);
-        view.setVisibility(View.VISIBLE);
+        @Override
+        public void onAnimationStart(Animator animation) {
+            mCancelled = false;
+        }
+
+        @Override
+        public void onAnimationCancel(Animator animation) {
+            mCancelled = true;
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (mCancelled) {
+                return;
+            }
+            mShadowTransition.finish(false);
+            if (!mShadowShowing) {
+                mShadowView.setVisibility(View.GONE);
+            }
+        }
+    };
+
+    SearchAnimator(SearchView searchView, View cardView, View shadowView) {
+        mSearchView = searchView;
+        mCardView = cardView;
+        mShadowView = shadowView;
+        mCardTransition = new Transition(cardView);
+        mShadowTransition = new Transition(shadowView);
+        mRevealPadding = searchView.getResources().getDimensionPixelSize(R.dimen.search_reveal);
+        mRevealCenterY = searchView.getResources().getDimensionPixelSize(R.dimen.search_height) / 2;
+
+        mCardFade = ObjectAnimator.ofFloat(cardView, View.ALPHA, 0.0f, 1.0f);
+        mCardFade.setInterpolator(sInterpolator);
+        mCardFade.addListener(mCardListener);
+
+        mShadowFade = ObjectAnimator.ofFloat(shadowView, View.ALPHA, 0.0f, 1.0f);
+        mShadowFade.setInterpolator(sInterpolator);
+        mShadowFade.addListener(mShadowListener);
     }
 
-    static void fadeOut(View view, int duration) {
-        Animation anim = new AlphaAnimation(1.0f, 0.0f);
-        anim.setInterpolator(new AccelerateDecelerateInterpolator());
-        anim.setDuration(duration);
+    void setHardwareLayers(boolean enabled) {
+        mHardwareLayers = enabled;
+    }
 
-        view.setAnimation(anim);
-        view.setVisibility(View.GONE);
+    boolean getHardwareLayers() {
+        return mHardwareLayers;
     }
 
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    static void revealOpen(View view, int duration, Context context, final SearchEditText editText, final boolean shouldClearOnOpen, final SearchView.OnOpenCloseListener listener) {
+    void setOnTransitionListener(SearchView.OnTransitionListener listener) {
+        mTransitionListener = listener;
+    }
 
-        int padding = context.getResources().getDimensionPixelSize(R.dimen.search_reveal);
+    void setFrameMonitor(SearchFrameMonitor monitor) {
+        mFrameMonitor = monitor;
+    }
 
-        int cx = view.getWidth() - padding;
-        int cy = context.getResources().getDimensionPixelSize(R.dimen.search_height) / 2;
+    void fadeIn(int duration) {
+        mShadowShowing = true;
+        mShadowTransition.start(SearchView.TRANSITION_SHADOW_IN);
+        fade(mShadowFade, mShadowView, 1.0f, duration);
+    }
 
-        if (cx != 0 && cy != 0) {
-            float finalRadius = (float) Math.hypot(cx, cy);
+    void fadeOut(int duration) {
+        mShadowShowing = false;
+        mShadowTransition.start(SearchView.TRANSITION_SHADOW_OUT);
+        fade(mShadowFade, mShadowView, 0.0f, duration);
+    }
 
-            if (SearchUtils.isRtlLayout(context)) {
-                cx = padding;
-            }
+    void fadeOpen(int duration) {
+        startCard(true);
+        fade(mCardFade, mCardView, 1.0f, duration);
+    }
 
-            Animator anim = ViewAnimationUtils.createCircularReveal(view, cx, cy, 0.0f, finalRadius);
-            anim.setInterpolator(new AccelerateDecelerateInterpolator());
-            anim.setDuration(duration);
-            anim.addListener(new Animator.AnimatorListener() { // new AnimatorListenerAdapter()
-                @Override
-                public void onAnimationStart(Animator animation) {
-                    if (listener != null) {
-                        listener.onOpen();
-                    }
-                }
+    void fadeClose(int duration) {
+        startCard(false);
+        fade(mCardFade, mCardView, 0.0f, duration);
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    if (shouldClearOnOpen && editText.length() > 0) {
-                        editText.getText().clear();
-                    }
-                    editText.requestFocus();
-                }
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    void revealOpen(int duration) {
+        reveal(true, duration);
+    }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    void revealClose(int duration) {
+        reveal(false, duration);
+    }
 
-                }
+    // for open and close without animation, a running card animation must not undo them
+    void cancelCard() {
+        mCardFade.cancel();
+        if (mReveal != null) {
+            mReveal.cancel();
+        }
+        mCardTransition.finish(true);
+        mCardView.setAlpha(1.0f);
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
+    void cancelShadow(boolean visible) {
+        mShadowShowing = visible;
+        mShadowFade.cancel();
+        mShadowTransition.finish(true);
+        mShadowView.setAlpha(1.0f);
+    }
 
-                }
-            });
+    // jumps to the end states, for a SearchView leaving its window
+    void end() {
+        end(mShadowFade);
+        end(mCardFade);
+        if (mReveal != null) {
+            end(mReveal);
+        }
+    }
 
-            view.setVisibility(View.VISIBLE);
-            anim.start();
+    // ---------------------------------------------------------------------------------------------
+    private void startCard(boolean opening) {
+        // the card was opened or opening when the running animation started
+        mSkipOpenStart = opening && (mCardFade.isRunning() || mReveal != null);
+        mCardFade.cancel();
+        if (mReveal != null) {
+            mReveal.cancel();
         }
+        mOpening = opening;
+        mCardTransition.start(opening ? SearchView.TRANSITION_OPEN : SearchView.TRANSITION_CLOSE);
     }
 
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    static void revealClose(final View view, int duration, Context context, final SearchEditText editText, final boolean shouldClearOnClose, final SearchView searchView, final SearchView.OnOpenCloseListener listener) {
+    // end() on an idle animator starts it first, which would replay a whole transition's listeners
+    private static void end(Animator animator) {
+        if (animator.isStarted()) {
+            animator.end();
+        }
+    }
 
-        int padding = context.getResources().getDimensionPixelSize(R.dimen.search_reveal);
+    private static String traceName(int type) {
+        switch (type) {
+            case SearchView.TRANSITION_OPEN:
+                return "SearchAnimator.open";
+            case SearchView.TRANSITION_CLOSE:
+                return "SearchAnimator.close";
+            case SearchView.TRANSITION_SHADOW_IN:
+                return "SearchAnimator.shadowIn";
+            default:
+                return "SearchAnimator.shadowOut";
+        }
+    }
 
-        int cx = view.getWidth() - padding;
-        int cy = context.getResources().getDimensionPixelSize(R.dimen.search_height) / 2;
+    // a reveal that was replaced may report its end late
+    private boolean isCurrent(Animator animation) {
+        return animation == mCardFade || animation == mReveal;
+    }
 
-        if (cx != 0 && cy != 0) {
-            float initialRadius = (float) Math.hypot(cx, cy);
+    private static void fade(ObjectAnimator animator, View view, float to, int duration) {
+        float from = view.getVisibility() == View.VISIBLE ? view.getAlpha() : 0.0f;
+        animator.cancel();
+        animator.setFloatValues(from, to);
+        animator.setDuration((long) (duration * Math.abs(to - from)));
+        view.setAlpha(from);
+        view.setVisibility(View.VISIBLE);
+        animator.start();
+    }
 
-            if (SearchUtils.isRtlLayout(context)) {
-                cx = padding;
-            }
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void reveal(boolean opening, int duration) {
+        int width = mCardView.getWidth();
+        if (width - mRevealPadding == 0 || mRevealCenterY == 0) {
+            return;
+        }
+        if (width != mRevealWidth) {
+            mRevealWidth = width;
+            int cx = width - mRevealPadding;
+            mRevealRadius = (float) Math.hypot(cx, mRevealCenterY);
+            mRevealCenterX = SearchUtils.isRtlLayout(mSearchView.getContext()) ? mRevealPadding : cx;
+        }
 
-            Animator anim = ViewAnimationUtils.createCircularReveal(view, cx, cy, initialRadius, 0.0f);
-            anim.setInterpolator(new AccelerateDecelerateInterpolator());
-            anim.setDuration(duration);
-            anim.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animation) {
-                    if (shouldClearOnClose && editText.length() > 0) {
-                        editText.getText().clear();
-                    }
-                    editText.clearFocus();
-                }
+        float from = opening ? 0.0f : mRevealRadius;
+        if (mReveal != null) {
+            from = currentRevealRadius();
+        }
+        float to = opening ? mRevealRadius : 0.0f;
+        startCard(opening);
+
+        mReveal = ViewAnimationUtils.createCircularReveal(mCardView, mRevealCenterX, mRevealCenterY, from, to);
+        mReveal.setInterpolator(sInterpolator);
+        mRevealDuration = (long) (duration * Math.abs(to - from) / mRevealRadius);
+        mReveal.setDuration(mRevealDuration);
+        mReveal.addListener(mCardListener);
+        mRevealFrom = from;
+        mRevealTo = to;
+        mRevealStartTime = AnimationUtils.currentAnimationTimeMillis();
+
+        mCardView.setAlpha(1.0f);
+        mCardView.setVisibility(View.VISIBLE);
+        mReveal.start();
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    view.setVisibility(View.GONE);
-                    searchView.setVisibility(View.GONE);
-                    if (listener != null) {
-                        listener.onClose();
-                    }
-                }
+    private float currentRevealRadius() {
+        if (mRevealDuration <= 0) {
+            return mRevealTo;
+        }
+        float fraction = Math.min(1.0f, (AnimationUtils.currentAnimationTimeMillis() - mRevealStartTime) / (float) mRevealDuration);
+        return mRevealFrom + (mRevealTo - mRevealFrom) * sInterpolator.getInterpolation(fraction);
+    }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
+    private void onOpenStart() {
+        if (mSkipOpenStart) {
+            mSkipOpenStart = false;
+            return;
+        }
+        if (mSearchView.mOnOpenCloseListener != null) {
+            mSearchView.mOnOpenCloseListener.onOpen();
+        }
+    }
 
-                }
+    private void onOpenEnd() {
+        SearchEditText editText = mSearchView.mEditText;
+        if (mSearchView.getShouldClearOnOpen() && editText.length() > 0) {
+            editText.getText().clear();
+        }
+        editText.requestFocus();
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
+    private void onCloseStart() {
+        SearchEditText editText = mSearchView.mEditText;
+        if (mSearchView.getShouldClearOnClose() && editText.length() > 0) {
+            editText.getText().clear();
+        }
+        editText.clearFocus();
+    }
 
-                }
-            });
-            anim.start();
+    private void onCloseEnd() {
+        mCardView.setVisibility(View.GONE);
+        mSearchView.setVisibility(View.GONE);
+        if (mSearchView.mOnOpenCloseListener != null) {
+            mSearchView.mOnOpenCloseListener.onClose();
         }
     }
 
-    static void fadeOpen(View view, int duration, final SearchEditText editText, final boolean shouldClearOnOpen, final SearchView.OnOpenCloseListener listener) {
-        Animation anim = new AlphaAnimation(0.0f, 1.0f);
-        anim.setInterpolator(new AccelerateDecelerateInterpolator());
-        anim.setDuration(duration);
-        anim.setAnimationListener(new Animation.AnimationListener() {
-            @Override
-            public void onAnimationStart(Animation animation) {
-                if (listener != null) {
-                    listener.onOpen();
-                }
-            }
 
-            @Override
-            public void onAnimationEnd(Animation animation) {
-                if (shouldClearOnOpen && editText.length() > 0) {
-                    editText.getText().clear();
-                }
-                editText.requestFocus();
-            }
+    private class Transition {
 
-            @Override
-            public void onAnimationRepeat(Animation animation) {
-            }
-        });
+        private final View mView;
+        private int mType = 0;
+        private long mStartTime = 0;
+        private int mTraceCookie = 0;
+        private boolean mRunning = false;
+        private boolean mLayer = false;
 
-        view.setAnimation(anim);
-        view.setVisibility(View.VISIBLE);
-    }
+        Transition(View view) {
+            mView = view;
+        }
 
-    static void fadeClose(final View view, int duration, final SearchEditText editText, final boolean shouldClearOnClose, final SearchView searchView, final SearchView.OnOpenCloseListener listener) {
-        Animation anim = new AlphaAnimation(1.0f, 0.0f);
-        anim.setInterpolator(new AccelerateDecelerateInterpolator());
-        anim.setDuration(duration);
-        anim.setAnimationListener(new Animation.AnimationListener() {
-            @Override
-            public void onAnimationStart(Animation animation) {
-                if (shouldClearOnClose && editText.length() > 0) {
-                    editText.getText().clear();
-                }
-                editText.clearFocus();
+        // a transition still running was reversed, it ends cancelled but leaves its layer
+        void start(int type) {
+            if (mRunning) {
+                report(true);
             }
-
-            @Override
-            public void onAnimationEnd(Animation animation) {
-                view.setVisibility(View.GONE);
-                searchView.setVisibility(View.GONE);
-                if (listener != null) {
-                    listener.onClose();
+            mType = type;
+            mStartTime = System.nanoTime();
+            mTraceCookie = SearchTrace.beginAsync(traceName(type));
+            mRunning = true;
+            if (mHardwareLayers && !mLayer && mView.isHardwareAccelerated() && mView.getLayerType() == View.LAYER_TYPE_NONE) {
+                ViewCompat.setLayerType(mView, View.LAYER_TYPE_HARDWARE, null);
+                mLayer = true;
+                if (ViewCompat.isAttachedToWindow(mView)) {
+                    mView.buildLayer();
                 }
             }
+            if (mFrameMonitor != null) {
+                mFrameMonitor.start(type);
+            }
+            if (mTransitionListener != null) {
+                mTransitionListener.onTransitionStart(type);
+            }
+        }
 
-            @Override
-            public void onAnimationRepeat(Animation animation) {
+        void finish(boolean cancelled) {
+            if (mRunning) {
+                report(cancelled);
+            }
+            if (mLayer) {
+                ViewCompat.setLayerType(mView, View.LAYER_TYPE_NONE, null);
+                mLayer = false;
             }
-        });
+        }
 
-        view.setAnimation(anim);
-        view.setVisibility(View.GONE);
+        private void report(boolean cancelled) {
+            mRunning = false;
+            SearchTrace.endAsync(traceName(mType), mTraceCookie);
+            if (mFrameMonitor != null) {
+                mFrameMonitor.stop(mType);
+            }
+            if (mTransitionListener != null) {
+                mTransitionListener.onTransitionEnd(mType, System.nanoTime() - mStartTime, mLayer, cancelled);
+            }
+        }
     }
 
-
 }
@@ -23,21 +23,36 @@ class SearchArrowDrawable extends DrawerArrowDrawable {
         }
     };
 
+    private ObjectAnimator mAnimator = null;
+
     SearchArrowDrawable(Context context) {
         super(context);
         // mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     }
 
+    /**
+     * Animates to the given state from wherever the drawable is, reversing an animation still in
+     * flight. The drawer arrow is at full progress as an arrow, the states are the other way round.
+     */
     void animate(float state, int duration) {
-        ObjectAnimator anim;
-        if (state == STATE_ARROW) {
-            anim = ObjectAnimator.ofFloat(this, PROGRESS, state, STATE_HAMBURGER);
+        float target = state == STATE_ARROW ? STATE_HAMBURGER : STATE_ARROW;
+        float progress = getProgress();
+        if (mAnimator == null) {
+            mAnimator = ObjectAnimator.ofFloat(this, PROGRESS, progress, target);
+            mAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
         } else {
-            anim = ObjectAnimator.ofFloat(this, PROGRESS, state, STATE_ARROW);
+            mAnimator.cancel();
+            mAnimator.setFloatValues(progress, target);
+        }
+        mAnimator.setDuration((long) (duration * Math.abs(target - progress)));
+        mAnimator.start();
+    }
+
+    void end() {
+        // an idle animator would be started and run to its end
+        if (mAnimator != null && mAnimator.isStarted()) {
+            mAnimator.end();
         }
-        anim.setInterpolator(new AccelerateDecelerateInterpolator());
-        anim.setDuration(duration);
-        anim.start();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.lapism.searchview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.Arrays;
+
+
+/**
+ * Records the time between frames with Choreographer while transitions are running. Every kind
+ * of transition has its own session so overlapping ones, the card opening while the shadow
+ * fades in, are measured separately from a single frame callback. Sessions keep their first
+ * {@link #MAX_FRAMES} frame times, later frames only add to the counts.
+ * <p>
+ * Main thread only. Frames are recorded only while a session is open.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class SearchFrameMonitor implements Choreographer.FrameCallback {
+
+    static final int MAX_FRAMES = 240;
+
+    // TRANSITION_OPEN up to TRANSITION_RESULTS
+    private static final int SESSIONS = 5;
+
+    private final SearchView.OnFrameStatsListener mListener;
+    private final long mRefreshIntervalNanos;
+    private final long[][] mFrames = new long[SESSIONS][MAX_FRAMES];
+    private final int[] mFrameCounts = new int[SESSIONS];
+    private final int[] mJankyCounts = new int[SESSIONS];
+    private final long[] mStartTimes = new long[SESSIONS];
+    private final boolean[] mOpen = new boolean[SESSIONS];
+    private final long[] mSorted = new long[MAX_FRAMES];
+    private int mOpenCount = 0;
+    private boolean mPosted = false;
+    private long mLastFrameTime = 0;
+
+    SearchFrameMonitor(Context context, SearchView.OnFrameStatsListener listener) {
+        mListener = listener;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        mRefreshIntervalNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60.0f));
+    }
+
+    // starting a session that is open already starts it over
+    void start(int type) {
+        int session = type - SearchView.TRANSITION_OPEN;
+        if (!mOpen[session]) {
+            mOpen[session] = true;
+            mOpenCount++;
+        }
+        mFrameCounts[session] = 0;
+        mJankyCounts[session] = 0;
+        mStartTimes[session] = System.nanoTime();
+        if (!mPosted) {
+            mPosted = true;
+            mLastFrameTime = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    void stop(int type) {
+        int session = type - SearchView.TRANSITION_OPEN;
+        if (!mOpen[session]) {
+            return;
+        }
+        mOpen[session] = false;
+        mOpenCount--;
+
+        int count = mFrameCounts[session];
+        int stored = Math.min(count, MAX_FRAMES);
+        System.arraycopy(mFrames[session], 0, mSorted, 0, stored);
+        Arrays.sort(mSorted, 0, stored);
+        mListener.onFrameStats(new SearchFrameStats(type, count, mJankyCounts[session],
+                System.nanoTime() - mStartTimes[session], mRefreshIntervalNanos, mSorted, stored));
+    }
+
+    void stopAll() {
+        for (int session = 0; session < SESSIONS; session++) {
+            stop(SearchView.TRANSITION_OPEN + session);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameTime != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameTime;
+            for (int session = 0; session < SESSIONS; session++) {
+                // a frame that began before the session belongs to whatever ran before it
+                if (mOpen[session] && mLastFrameTime >= mStartTimes[session]) {
+                    record(session, frameNanos);
+                }
+            }
+        }
+        mLastFrameTime = frameTimeNanos;
+        if (mOpenCount > 0) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            mPosted = false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private void record(int session, long frameNanos) {
+        int count = mFrameCounts[session];
+        if (count < MAX_FRAMES) {
+            mFrames[session][count] = frameNanos;
+        }
+        mFrameCounts[session] = count + 1;
+        if (frameNanos * 2 > mRefreshIntervalNanos * 3) {
+            mJankyCounts[session]++;
+        }
+    }
+
+}
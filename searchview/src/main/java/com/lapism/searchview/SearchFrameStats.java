@@ -0,0 +1,94 @@
+package com.lapism.searchview;
+
+import java.util.Locale;
+
+
+/**
+ * Frame times recorded with Choreographer during one open, close or shadow transition, or while
+ * the results list settled after an update. A frame is janky when it took longer than one and a
+ * half refresh intervals, i.e. at least one vsync was missed.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SearchFrameStats {
+
+    private final int mType;
+    private final int mFrameCount;
+    private final int mJankyFrameCount;
+    private final long mDurationNanos;
+    private final long mRefreshIntervalNanos;
+    private final long mPercentile50Nanos;
+    private final long mPercentile90Nanos;
+    private final long mPercentile95Nanos;
+    private final long mPercentile99Nanos;
+    private final long mMaxNanos;
+
+    SearchFrameStats(int type, int frameCount, int jankyFrameCount, long durationNanos, long refreshIntervalNanos, long[] sorted, int sortedCount) {
+        mType = type;
+        mFrameCount = frameCount;
+        mJankyFrameCount = jankyFrameCount;
+        mDurationNanos = durationNanos;
+        mRefreshIntervalNanos = refreshIntervalNanos;
+        mPercentile50Nanos = percentile(sorted, sortedCount, 50);
+        mPercentile90Nanos = percentile(sorted, sortedCount, 90);
+        mPercentile95Nanos = percentile(sorted, sortedCount, 95);
+        mPercentile99Nanos = percentile(sorted, sortedCount, 99);
+        mMaxNanos = sortedCount == 0 ? 0 : sorted[sortedCount - 1];
+    }
+
+    // one of SearchView.TRANSITION_*
+    public int getType() {
+        return mType;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getJankyFrameCount() {
+        return mJankyFrameCount;
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    public long getRefreshIntervalNanos() {
+        return mRefreshIntervalNanos;
+    }
+
+    public long getPercentile50Nanos() {
+        return mPercentile50Nanos;
+    }
+
+    public long getPercentile90Nanos() {
+        return mPercentile90Nanos;
+    }
+
+    public long getPercentile95Nanos() {
+        return mPercentile95Nanos;
+    }
+
+    public long getPercentile99Nanos() {
+        return mPercentile99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SearchFrameStats[type=%d, frames=%d, janky=%d, p50=%.1fms, p90=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms]",
+                mType, mFrameCount, mJankyFrameCount, mPercentile50Nanos / 1e6, mPercentile90Nanos / 1e6, mPercentile95Nanos / 1e6, mPercentile99Nanos / 1e6, mMaxNanos / 1e6);
+    }
+
+    // nearest rank
+    private static long percentile(long[] sorted, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+}
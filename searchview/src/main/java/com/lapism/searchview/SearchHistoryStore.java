@@ -0,0 +1,513 @@
+package com.lapism.searchview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Submitted queries, kept in memory and persisted as an append-only log. Writes are batched on a
+ * background thread and the log is rewritten in the background once it holds mostly dead
+ * records.
+ * <p>
+ * Entries are ranked by frecency: every submit adds one to a score that halves every
+ * {@code halfLife} milliseconds. The score is kept as {@code ln(score) + time * ln2 / halfLife},
+ * which orders entries the same way at any point in time, so a submit only moves one entry and
+ * nothing is re-sorted as time passes.
+ * <p>
+ * Log layout, big-endian, version 2: magic and version ints, then records of a type byte, the
+ * time as a long, the rank as a double, the length as a char and the UTF-16 text. Version 1
+ * records have no rank and count as a single use. The log is read once, through a buffer, when
+ * the store is opened. A torn last record is dropped by compacting the log; a file of another magic
+ * or a newer version is never written, the history then lives in memory only.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SearchHistoryStore {
+
+    public static final int DEFAULT_MAX_SIZE = 50;
+    public static final long DEFAULT_HALF_LIFE = TimeUnit.DAYS.toMillis(7);
+
+    private static final String TAG = "SearchHistoryStore";
+    private static final int MAGIC = 0x53564853; // SVHS
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_ADD = 1;
+    private static final int MAX_LENGTH = 1024;
+    private static final int FLUSH_DELAY = 500;
+    private static final int COMPACT_MIN_RECORDS = 64;
+
+    private static ScheduledExecutorService sExecutor = null;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final File mFile;
+    private final double mDecay;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    // highest rank first
+    private final List<Entry> mRanked = new ArrayList<>();
+    private final List<Entry> mPending = new ArrayList<>();
+    private final List<OnHistoryChangeListener> mListeners = new ArrayList<>();
+
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private int mRecordCount = 0;
+    // layout of the records in the file, only records of this version can be appended
+    private int mFileVersion = VERSION;
+    private boolean mLoaded = false;
+    private boolean mFlushScheduled = false;
+    private boolean mClearPending = false;
+    // set when the log is not one this version can read, it is then never written
+    private boolean mRefused = false;
+
+    public SearchHistoryStore(File file) {
+        this(file, DEFAULT_HALF_LIFE);
+    }
+
+    // ranks saved with another half-life are kept as they are, so keep it stable for a file
+    public SearchHistoryStore(File file, long halfLife) {
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("halfLife <= 0: " + halfLife);
+        }
+        mFile = file;
+        mDecay = Math.log(2) / halfLife;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trim(null);
+    }
+
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public void add(CharSequence query) {
+        String text = query.toString().trim();
+        if (text.length() == 0) {
+            return;
+        }
+        if (text.length() > MAX_LENGTH) {
+            text = text.substring(0, MAX_LENGTH);
+        }
+        synchronized (this) {
+            long time = System.currentTimeMillis();
+            String key = SuggestionIndex.normalize(text);
+            double rank = time * mDecay;
+            Entry previous = mEntries.get(key);
+            if (previous != null) {
+                rank = addRanks(previous.mRank, rank);
+                mRanked.remove(previous);
+            }
+            Entry entry = new Entry(text, time, rank);
+            mEntries.put(key, entry);
+            insert(entry);
+            trim(entry);
+            mPending.add(entry);
+            scheduleFlush();
+        }
+        notifyChanged();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            mEntries.clear();
+            mRanked.clear();
+            mPending.clear();
+            mClearPending = true;
+            scheduleFlush();
+        }
+        notifyChanged();
+    }
+
+    // highest frecency first
+    public synchronized List<String> getTop(int limit) {
+        return find("", limit);
+    }
+
+    // highest frecency first, matching the start of the query case-insensitively
+    public synchronized List<String> find(CharSequence prefix, int limit) {
+        List<String> results = new ArrayList<>(Math.max(0, Math.min(limit, mRanked.size())));
+        String normalized = SuggestionIndex.normalize(prefix);
+        for (int i = 0; i < mRanked.size() && results.size() < limit; i++) {
+            Entry entry = mRanked.get(i);
+            if (entry.mKey.startsWith(normalized)) {
+                results.add(entry.mText);
+            }
+        }
+        return results;
+    }
+
+    // current score of a query, 0 when it is not in the history
+    public synchronized double getScore(CharSequence query) {
+        Entry entry = mEntries.get(SuggestionIndex.normalize(query.toString().trim()));
+        return entry == null ? 0 : Math.exp(entry.mRank - System.currentTimeMillis() * mDecay);
+    }
+
+    public void flush() {
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+    }
+
+    public void addOnHistoryChangeListener(OnHistoryChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeOnHistoryChangeListener(OnHistoryChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // ln(e^a + e^b) without overflowing, ranks grow with the time in milliseconds
+    private static double addRanks(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    // binary search for the slot, ahead of older entries of the same rank
+    private void insert(Entry entry) {
+        int low = 0;
+        int high = mRanked.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mRanked.get(middle).mRank > entry.mRank) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        mRanked.add(low, entry);
+    }
+
+    // drops the lowest ranked entries, never the one just submitted
+    private void trim(Entry keep) {
+        for (int i = mRanked.size() - 1; i >= 0 && mRanked.size() > mMaxSize; i--) {
+            Entry entry = mRanked.get(i);
+            if (entry != keep) {
+                mRanked.remove(i);
+                mEntries.remove(entry.mKey);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            getExecutor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void load() {
+        LinkedHashMap<String, Entry> loaded = new LinkedHashMap<>();
+        int records = 0;
+        int fileVersion = VERSION;
+        boolean damaged = false;
+        boolean refused = false;
+        DataInputStream in = null;
+        try {
+            // every entry ends up in the map anyway, a buffered read beats mapping the log
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (mFile.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+                throw new IOException("Not a history log");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported history log version " + version);
+            }
+            fileVersion = version;
+            char[] text = new char[64];
+            int type;
+            while ((type = in.read()) != -1) {
+                if (type != RECORD_ADD) {
+                    throw new IOException("Unknown record type " + type);
+                }
+                long time = in.readLong();
+                double rank = version >= 2 ? in.readDouble() : time * mDecay;
+                int length = in.readChar();
+                if (length > text.length) {
+                    text = new char[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    text[i] = in.readChar();
+                }
+                // a record holds the rank after that submit, so the last one of a key wins
+                Entry entry = new Entry(new String(text, 0, length), time, rank);
+                loaded.remove(entry.mKey);
+                loaded.put(entry.mKey, entry);
+                records++;
+            }
+        } catch (FileNotFoundException e) {
+            // nothing saved yet
+        } catch (EOFException e) {
+            // a torn last record, rewritten below so later appends stay readable
+            damaged = true;
+        } catch (IOException e) {
+            // written by a newer version or not a history log at all, left untouched
+            Log.w(TAG, "Reading " + mFile + " failed, history will not be saved", e);
+            refused = true;
+        } finally {
+            close(in);
+        }
+
+        synchronized (this) {
+            if (!mClearPending) {
+                // queries added while loading only know about their own submits
+                for (Entry entry : mEntries.values()) {
+                    Entry saved = loaded.get(entry.mKey);
+                    if (saved != null) {
+                        entry = new Entry(entry.mText, entry.mTime, addRanks(saved.mRank, entry.mRank));
+                        mPending.add(entry);
+                        scheduleFlush();
+                    }
+                    loaded.remove(entry.mKey);
+                    loaded.put(entry.mKey, entry);
+                }
+                mEntries.clear();
+                mEntries.putAll(loaded);
+                mRanked.clear();
+                mRanked.addAll(loaded.values());
+                // latest submits first, the sort keeps them ahead of older entries of the same rank
+                Collections.reverse(mRanked);
+                Collections.sort(mRanked, new Comparator<Entry>() {
+                    @Override
+                    public int compare(Entry a, Entry b) {
+                        return Double.compare(b.mRank, a.mRank);
+                    }
+                });
+                trim(null);
+            }
+            mRecordCount = records;
+            mFileVersion = fileVersion;
+            mRefused = refused;
+            mLoaded = true;
+        }
+        notifyChanged();
+        if (damaged) {
+            compact();
+        }
+    }
+
+    private void write() {
+        List<Entry> pending;
+        boolean clear;
+        boolean upgrade;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mRefused) {
+                mPending.clear();
+                mClearPending = false;
+                return;
+            }
+            if (mPending.isEmpty() && !mClearPending) {
+                return;
+            }
+            pending = new ArrayList<>(mPending);
+            clear = mClearPending;
+            mPending.clear();
+            mClearPending = false;
+            upgrade = !clear && mFileVersion < VERSION;
+        }
+
+        // records cannot be appended under an older header, the pending ones are in mEntries
+        if (upgrade) {
+            compact();
+            return;
+        }
+
+        DataOutputStream out = null;
+        try {
+            boolean append = !clear && mFile.length() >= HEADER_SIZE;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, append)));
+            if (!append) {
+                writeHeader(out);
+            }
+            for (Entry entry : pending) {
+                writeEntry(out, entry);
+            }
+            out.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Writing " + mFile + " failed", e);
+        } finally {
+            close(out);
+        }
+
+        boolean compact;
+        synchronized (this) {
+            if (clear) {
+                mFileVersion = VERSION;
+            }
+            mRecordCount = clear ? pending.size() : mRecordCount + pending.size();
+            compact = mRecordCount > Math.max(COMPACT_MIN_RECORDS, mEntries.size() * 2);
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    // rewrites the log with one record per live entry and swaps it in
+    private void compact() {
+        List<Entry> entries;
+        synchronized (this) {
+            if (mRefused) {
+                return;
+            }
+            // lowest ranked and oldest first, so a reload breaks ties the same way
+            entries = new ArrayList<>(mRanked);
+        }
+        Collections.reverse(entries);
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            writeHeader(out);
+            for (Entry entry : entries) {
+                writeEntry(out, entry);
+            }
+            out.flush();
+            close(out);
+            out = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Cannot rename " + temp + " to " + mFile);
+            }
+            synchronized (this) {
+                mRecordCount = entries.size();
+                mFileVersion = VERSION;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Compacting " + mFile + " failed", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeByte(RECORD_ADD);
+        out.writeLong(entry.mTime);
+        out.writeDouble(entry.mRank);
+        out.writeChar(entry.mText.length());
+        out.writeChars(entry.mText);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void notifyChanged() {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<OnHistoryChangeListener> listeners;
+                synchronized (mListeners) {
+                    listeners = new ArrayList<>(mListeners);
+                }
+                for (OnHistoryChangeListener listener : listeners) {
+                    listener.onHistoryChange();
+                }
+            }
+        });
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "SearchView history");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    public interface OnHistoryChangeListener {
+        void onHistoryChange();
+    }
+
+    private static class Entry {
+
+        final String mText;
+        final String mKey;
+        final long mTime;
+        final double mRank;
+
+        Entry(String text, long time, double rank) {
+            mText = text;
+            mKey = SuggestionIndex.normalize(text);
+            mTime = time;
+            mRank = rank;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.lapism.searchview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+/**
+ * One pool of {@code search_item} rows for every SearchView in the process, so a new screen
+ * reuses the rows an earlier one inflated instead of paying for them on its first keystroke.
+ * Rows are inflated from the application context wrapped in a copy of the host's theme, never
+ * an Activity, so the pool can outlive the screens that filled it; their colours come from the
+ * SearchView that binds them.
+ * <p>
+ * A row only takes its background and text style from the theme. Hosts that resolve both alike
+ * share a view type and so their rows, other themes get rows of their own.
+ * <p>
+ * Main thread only.
+ */
+class SearchItemPool {
+
+    private static final RecyclerView.RecycledViewPool sPool = new RecyclerView.RecycledViewPool();
+    // view types by background and text style, numbered from 1 in the order they are seen
+    private static final HashMap<Long, Integer> sViewTypes = new HashMap<>();
+    // themed contexts rows are inflated from, by view type
+    private static final SparseArray<Context> sContexts = new SparseArray<>();
+    private static int sMaxSize = 0;
+    private static int sPreloadCount = 0;
+    private static int sPreloadType = 0;
+    private static FrameLayout sParent = null;
+    private static SearchAdapter sAdapter = null;
+
+    private static final MessageQueue.IdleHandler sPreloader = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            // one row per idle pass, input that arrives meanwhile is never held up for long
+            if (sPreloadCount > 0) {
+                sPool.putRecycledView(sAdapter.createViewHolder(sParent, sPreloadType));
+                sPreloadCount--;
+            }
+            return sPreloadCount > 0;
+        }
+    };
+
+    private SearchItemPool() {
+    }
+
+    static RecyclerView.RecycledViewPool get(int size) {
+        ensureSize(size);
+        return sPool;
+    }
+
+    static void ensureSize(int size) {
+        if (size > sMaxSize) {
+            sMaxSize = size;
+            for (int i = 0; i < sContexts.size(); i++) {
+                sPool.setMaxRecycledViews(sContexts.keyAt(i), size);
+            }
+        }
+    }
+
+    static int getViewType(Context context) {
+        Resources.Theme theme = context.getTheme();
+        TypedValue value = new TypedValue();
+        int background = theme.resolveAttribute(android.R.attr.selectableItemBackground, value, false) ? value.data : 0;
+        int text = theme.resolveAttribute(android.R.attr.textViewStyle, value, false) ? value.data : 0;
+        Long key = (long) background << 32 | (text & 0xffffffffL);
+        Integer known = sViewTypes.get(key);
+        if (known == null) {
+            int viewType = sViewTypes.size() + 1;
+            sViewTypes.put(key, viewType);
+            ContextThemeWrapper themed = new ContextThemeWrapper(context.getApplicationContext(), 0);
+            themed.getTheme().setTo(theme);
+            sContexts.put(viewType, themed);
+            sPool.setMaxRecycledViews(viewType, sMaxSize);
+            return viewType;
+        }
+        return known;
+    }
+
+    // the themed application context for rows of a type from getViewType
+    static Context getContext(int viewType) {
+        return sContexts.get(viewType);
+    }
+
+    /**
+     * Inflates rows themed like {@code context} into the pool while the main thread is idle, until
+     * it holds {@code count} of them. Calling it again before the rows are ready replaces the
+     * count and theme instead of adding to them.
+     */
+    static void preload(Context context, int count) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("SearchView rows must be preloaded on the main thread");
+        }
+        if (sParent == null) {
+            sParent = new FrameLayout(context.getApplicationContext());
+            sAdapter = new SearchAdapter();
+        }
+        ensureSize(count);
+        boolean running = sPreloadCount > 0;
+        sPreloadType = getViewType(context);
+        sPreloadCount = Math.max(0, count - getRecycledViewCount(sPreloadType));
+        if (!running && sPreloadCount > 0) {
+            Looper.myQueue().addIdleHandler(sPreloader);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // the pool has no count of its own in this support library, its rows are taken and put back
+    private static int getRecycledViewCount(int viewType) {
+        List<RecyclerView.ViewHolder> rows = new ArrayList<>();
+        RecyclerView.ViewHolder row;
+        while ((row = sPool.getRecycledView(viewType)) != null) {
+            rows.add(row);
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            sPool.putRecycledView(rows.get(i));
+        }
+        return rows.size();
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.lapism.searchview;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/**
+ * Keystroke latency of a SearchView, from the text change to each stage of the query pipeline,
+ * kept in log-bucketed histograms of fixed size. Every power of two is split into four buckets,
+ * so a reported value is at most a quarter above the measured one, from a microsecond up to a
+ * minute. Read it through {@link #snapshot()}.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SearchMetrics {
+
+    // keystroke to the query handed to the provider's executor, cache hits skip this stage
+    public static final int STAGE_DISPATCH = 0;
+    // keystroke to the results given to the list, from the cache or from the provider
+    public static final int STAGE_RESULTS = 1;
+    // keystroke to the first frame that draws the new results
+    public static final int STAGE_RENDER = 2;
+
+    static final int STAGES = 3;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 26; // 2^26 us, about 67 s
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final int[][] mBuckets = new int[STAGES][BUCKETS];
+    private final long[] mCounts = new long[STAGES];
+    private final long[] mMaxNanos = new long[STAGES];
+
+    SearchMetrics() {
+    }
+
+    synchronized void record(int stage, long nanos) {
+        mBuckets[stage][bucketOf(Math.max(0, nanos) / 1000)]++;
+        mCounts[stage]++;
+        mMaxNanos[stage] = Math.max(mMaxNanos[stage], nanos);
+    }
+
+    public synchronized Snapshot snapshot() {
+        int[][] buckets = new int[STAGES][];
+        for (int stage = 0; stage < STAGES; stage++) {
+            buckets[stage] = mBuckets[stage].clone();
+        }
+        return new Snapshot(buckets, mCounts.clone(), mMaxNanos.clone());
+    }
+
+    public synchronized void reset() {
+        for (int stage = 0; stage < STAGES; stage++) {
+            Arrays.fill(mBuckets[stage], 0);
+        }
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(mMaxNanos, 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // largest value that falls in the bucket, in microseconds
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Histograms as they were when the snapshot was taken.
+     */
+    public static class Snapshot {
+
+        private final int[][] mBuckets;
+        private final long[] mCounts;
+        private final long[] mMaxNanos;
+
+        Snapshot(int[][] buckets, long[] counts, long[] maxNanos) {
+            mBuckets = buckets;
+            mCounts = counts;
+            mMaxNanos = maxNanos;
+        }
+
+        public long getCount(int stage) {
+            return mCounts[stage];
+        }
+
+        public long getMaxNanos(int stage) {
+            return mMaxNanos[stage];
+        }
+
+        // upper bound of the bucket holding the percentile, 0 when nothing was recorded
+        public long getPercentileNanos(int stage, double percentile) {
+            long count = mCounts[stage];
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            int[] buckets = mBuckets[stage];
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(bucket) * 1000 + 999, mMaxNanos[stage]);
+                }
+            }
+            return mMaxNanos[stage];
+        }
+
+        public long getP50Nanos(int stage) {
+            return getPercentileNanos(stage, 50);
+        }
+
+        public long getP95Nanos(int stage) {
+            return getPercentileNanos(stage, 95);
+        }
+
+        public long getP99Nanos(int stage) {
+            return getPercentileNanos(stage, 99);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("SearchMetrics");
+            String[] names = {"dispatch", "results", "render"};
+            for (int stage = 0; stage < STAGES; stage++) {
+                builder.append(String.format(Locale.US, "[%s: n=%d, p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms]",
+                        names[stage], mCounts[stage], getP50Nanos(stage) / 1e6, getP95Nanos(stage) / 1e6, getP99Nanos(stage) / 1e6, mMaxNanos[stage] / 1e6));
+            }
+            return builder.toString();
+        }
+    }
+
+}
@@ -15,13 +15,18 @@ import android.graphics.PorterDuffColorFilter;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.Process;
+import android.os.SystemClock;
 import android.speech.RecognizerIntent;
 import android.support.annotation.ColorInt;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.DefaultItemAnimator;
 import android.support.v7.widget.LinearLayoutManager;
@@ -30,10 +35,12 @@ import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewStub;
 import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.FrameLayout;
@@ -41,6 +48,10 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 
 @SuppressWarnings({"WeakerAccess", "unused"})
@@ -56,13 +67,33 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     public static final int THEME_LIGHT = 3000;
     public static final int THEME_DARK = 3001;
     public static final int SPEECH_REQUEST_CODE = 4000;
+    public static final int MATCH_PREFIX = SuggestionRequest.MATCH_PREFIX;
+    public static final int MATCH_INFIX = SuggestionRequest.MATCH_INFIX;
+    public static final int SUGGESTIONS_LIMIT = 8;
+    public static final int TRANSITION_OPEN = 6000;
+    public static final int TRANSITION_CLOSE = 6001;
+    public static final int TRANSITION_SHADOW_IN = 6002;
+    public static final int TRANSITION_SHADOW_OUT = 6003;
+    public static final int TRANSITION_RESULTS = 6004;
+
+    // parts of the style waiting for the next apply pass
+    private static final int STYLE_VERSION = 1;
+    private static final int STYLE_MARGINS = 1 << 1;
+    private static final int STYLE_NAVIGATION_ICON = 1 << 2;
+    private static final int STYLE_BACKGROUND_COLOR = 1 << 3;
+    private static final int STYLE_ICON_COLOR = 1 << 4;
+    private static final int STYLE_TEXT_COLOR = 1 << 5;
+    private static final int STYLE_HINT_COLOR = 1 << 6;
+    private static final int STYLE_TEXT_SIZE = 1 << 7;
+    private static final int STYLE_TYPEFACE = 1 << 8;
+    private static final int STYLE_SHADOW_COLOR = 1 << 9;
+    private static final int STYLE_ELEVATION = 1 << 10;
+
+    private static final String TAG = "SearchView";
 
-    private static int mIconColor = Color.BLACK;
-    private static int mTextColor = Color.BLACK;
-    private static int mTextHighlightColor = Color.BLACK;
-    private static int mTextStyle = Typeface.NORMAL;
-    private static Typeface mTextFont = Typeface.DEFAULT;
     private static CharSequence mUserQuery = "";
+    private static ExecutorService sSuggestionExecutor = null;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
 
     private final Context mContext;
 
@@ -70,23 +101,138 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     protected OnOpenCloseListener mOnOpenCloseListener = null;
     protected OnMenuClickListener mOnMenuClickListener = null;
     protected SearchArrowDrawable mSearchArrow = null;
+    protected SearchAnimator mSearchAnimator = null;
+    protected SuggestionIndex mSuggestionIndex = null;
+    protected SuggestionProvider mSuggestionProvider = null;
+    protected Executor mSuggestionExecutor = null;
+    protected SuggestionCache mSuggestionCache = new SuggestionCache();
+    protected SearchAdapter mSearchAdapter = null;
+    protected SearchHistoryStore mHistoryStore = null;
 
     protected View mShadowView;
     protected CardView mCardView;
+    protected ViewStub mResultStub;
+    protected RecyclerView mRecyclerView = null; // null until the first results are shown
     protected SearchEditText mEditText;
     protected ImageView mBackImageView;
     protected ImageView mEmptyImageView;
 
     protected int mVersion = VERSION_TOOLBAR;
+    protected int mVersionMargins = VERSION_MARGINS_TOOLBAR_SMALL;
     protected int mAnimationDuration = ANIMATION_DURATION;
     protected float mIsSearchArrowHamburgerState = SearchArrowDrawable.STATE_HAMBURGER;
     protected boolean mShadow = true;
     protected boolean mIsSearchOpen = false;
+    protected boolean mFuzzy = false;
+    protected int mMatchMode = MATCH_PREFIX;
+    protected int mQueryTextChangeDelay = 0;
+    protected int mQueryTextChangeMaxWait = 0;
+    protected int mSuggestionsLimit = SUGGESTIONS_LIMIT;
     protected CharSequence mOldQueryText;
 
+    private SuggestionRequest mSuggestionRequest = null;
+    private long mSuggestionSequence = 0;
+    private int mSuggestionModCount = 0;
+    private String mPendingQueryText = null;
+    private String mDispatchedQueryText = null;
+    private long mPendingSince = 0;
+    private final SearchHistoryStore.OnHistoryChangeListener mOnHistoryChangeListener = new SearchHistoryStore.OnHistoryChangeListener() {
+        @Override
+        public void onHistoryChange() {
+            updateSuggestions(mEditText.getText());
+        }
+    };
+    private SearchFrameMonitor mFrameMonitor = null;
+    private boolean mResultsChanged = false;
+    private final SearchMetrics mMetrics = new SearchMetrics();
+    // time of the keystroke whose stages are still being timed, 0 when there is none
+    private long mKeystrokeTime = 0;
+    private boolean mKeystrokeDispatched = false;
+    private boolean mKeystrokeResults = false;
+    private final RecyclerView.AdapterDataObserver mResultsObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            onResultsChanged();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onResultsChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onResultsChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onResultsChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onResultsChanged();
+        }
+    };
+    private final ViewTreeObserver.OnPreDrawListener mResultsPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (mResultsChanged) {
+                mResultsChanged = false;
+                if (mKeystrokeResults) {
+                    mMetrics.record(SearchMetrics.STAGE_RENDER, System.nanoTime() - mKeystrokeTime);
+                    mKeystrokeTime = 0;
+                    mKeystrokeResults = false;
+                }
+                onResultsLaidOut();
+            }
+            return true;
+        }
+    };
+    private final RecyclerView.ItemAnimator.ItemAnimatorFinishedListener mResultsSettledListener = new RecyclerView.ItemAnimator.ItemAnimatorFinishedListener() {
+        @Override
+        public void onAnimationsFinished() {
+            if (mFrameMonitor != null) {
+                mFrameMonitor.stop(TRANSITION_RESULTS);
+            }
+        }
+    };
+    private final Runnable mDispatchQueryTextChange = new Runnable() {
+        @Override
+        public void run() {
+            dispatchQueryTextChange();
+        }
+    };
     private boolean mShouldClearOnClose = false;
     private boolean mShouldClearOnOpen = false;
 
+    // style values set but not applied to the child views yet, see applyStyle
+    private int mNavigationIconResource = 0;
+    private Drawable mNavigationIcon = null;
+    private boolean mNavigationIconHidden = false;
+    private int mBackgroundColor = 0;
+    private int mIconColor = Color.BLACK;
+    private int mTextColor = Color.BLACK;
+    private int mTextHighlightColor = Color.BLACK;
+    private int mTextStyle = Typeface.NORMAL;
+    private Typeface mTextFont = Typeface.DEFAULT;
+    private int mHintColor = 0;
+    private float mTextSize = 0;
+    private int mShadowColor = 0;
+    // no initializers, setElevation may already run from the FrameLayout constructor
+    private float mElevation;
+    private int mDirtyStyle;
+    private boolean mStyleReady = false;
+    private boolean mStylePosted = false;
+    private final Runnable mApplyStyle = new Runnable() {
+        @Override
+        public void run() {
+            mStylePosted = false;
+            applyStyle();
+        }
+    };
+
     public SearchView(Context context) {
         this(context, null);
     }
@@ -98,68 +244,88 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     public SearchView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
         mContext = context;
-        initView();
-        initStyle(attrs, defStyleAttr);
+        boolean traced = SearchTrace.begin("SearchView.initView");
+        try {
+            initView();
+        } finally {
+            SearchTrace.end(traced);
+        }
+        traced = SearchTrace.begin("SearchView.initStyle");
+        try {
+            initStyle(attrs, defStyleAttr);
+            mStyleReady = true;
+            applyStyle();
+        } finally {
+            SearchTrace.end(traced);
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     public SearchView(Context context, @Nullable AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
         mContext = context;
-        initView();
-        initStyle(attrs, defStyleAttr);
+        boolean traced = SearchTrace.begin("SearchView.initView");
+        try {
+            initView();
+        } finally {
+            SearchTrace.end(traced);
+        }
+        traced = SearchTrace.begin("SearchView.initStyle");
+        try {
+            initStyle(attrs, defStyleAttr);
+            mStyleReady = true;
+            applyStyle();
+        } finally {
+            SearchTrace.end(traced);
+        }
     }
 
-    public static int getIconColor() {
+    public int getIconColor() {
         return mIconColor;
     }
 
+    // result rows take the colours right away, they are bound later anyway
     public void setIconColor(@ColorInt int color) {
         mIconColor = color;
-
-        ColorFilter colorFilter = new PorterDuffColorFilter(mIconColor, PorterDuff.Mode.SRC_IN);
-
-        mBackImageView.setColorFilter(colorFilter);
-        mEmptyImageView.setColorFilter(colorFilter);
-
-        if (mSearchArrow != null) {
-            mSearchArrow.setColorFilter(colorFilter);
-        }
+        mSearchAdapter.setIconColor(color);
+        invalidateStyle(STYLE_ICON_COLOR);
     }
 
-    public static int getTextColor() {
+    public int getTextColor() {
         return mTextColor;
     }
 
     public void setTextColor(@ColorInt int color) {
         mTextColor = color;
-        mEditText.setTextColor(mTextColor);
+        mSearchAdapter.setTextColor(color);
+        invalidateStyle(STYLE_TEXT_COLOR);
     }
 
-    public static int getTextHighlightColor() {
+    public int getTextHighlightColor() {
         return mTextHighlightColor;
     }
 
     public void setTextHighlightColor(@ColorInt int color) {
         mTextHighlightColor = color;
+        mSearchAdapter.setTextHighlightColor(color);
     }
 
-    public static Typeface getTextFont() {
+    public Typeface getTextFont() {
         return mTextFont;
     }
 
     public void setTextFont(Typeface font) {
         mTextFont = font;
-        mEditText.setTypeface((Typeface.create(mTextFont, mTextStyle)));
+        invalidateStyle(STYLE_TYPEFACE);
     }
 
-    public static int getTextStyle() {
+    public int getTextStyle() {
         return mTextStyle;
     }
 
     public void setTextStyle(int style) {
         mTextStyle = style;
-        mEditText.setTypeface((Typeface.create(mTextFont, mTextStyle)));
+        invalidateStyle(STYLE_TYPEFACE);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -200,6 +366,8 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         mShadowView.setOnClickListener(this);
         mShadowView.setVisibility(View.GONE);
 
+        mSearchAnimator = new SearchAnimator(this, mCardView, mShadowView);
+
         mBackImageView = (ImageView) findViewById(R.id.imageView_arrow_back);
         mBackImageView.setOnClickListener(this);
 
@@ -223,13 +391,34 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                SearchView.this.onTextChanged(s);
+                mKeystrokeTime = System.nanoTime();
+                mKeystrokeDispatched = false;
+                mKeystrokeResults = false;
+                boolean traced = SearchTrace.begin("SearchView.onTextChanged");
+                try {
+                    SearchView.this.onTextChanged(s);
+                } finally {
+                    SearchTrace.end(traced);
+                }
             }
 
             @Override
             public void afterTextChanged(Editable s) {
             }
         });
+        mSearchAdapter = new SearchAdapter();
+        mSearchAdapter.setViewType(SearchItemPool.getViewType(mContext));
+        mSearchAdapter.setExecutor(getSuggestionExecutor());
+        mSearchAdapter.registerAdapterDataObserver(mResultsObserver);
+        mSearchAdapter.setOnItemClickListener(new SearchAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(View view, CharSequence text) {
+                setQuery(text);
+            }
+        });
+
+        mResultStub = (ViewStub) findViewById(R.id.viewStub_result);
+
         mEditText.setOnFocusChangeListener(new OnFocusChangeListener() {
             @Override
             public void onFocusChange(View v, boolean hasFocus) {
@@ -241,6 +430,7 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
             }
         });
 
+        // defaults, the setters only record them until the constructor applies the style
         setVersion(VERSION_TOOLBAR);
         setVersionMargins(VERSION_MARGINS_TOOLBAR_SMALL);
         setTheme(THEME_LIGHT, true);
@@ -306,18 +496,45 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
             if (attr.hasValue(R.styleable.SearchView_search_clear_on_open)) {
                 setShouldClearOnOpen(attr.getBoolean(R.styleable.SearchView_search_clear_on_open, true));
             }
+            if (attr.hasValue(R.styleable.SearchView_search_fuzzy)) {
+                setFuzzy(attr.getBoolean(R.styleable.SearchView_search_fuzzy, false));
+            }
+            if (attr.hasValue(R.styleable.SearchView_search_match)) {
+                setMatchMode(attr.getInt(R.styleable.SearchView_search_match, MATCH_PREFIX));
+            }
+            if (attr.hasValue(R.styleable.SearchView_search_query_change_delay)) {
+                setQueryTextChangeDelay(attr.getInt(R.styleable.SearchView_search_query_change_delay, 0));
+            }
+            if (attr.hasValue(R.styleable.SearchView_search_query_change_max_wait)) {
+                setQueryTextChangeMaxWait(attr.getInt(R.styleable.SearchView_search_query_change_max_wait, 0));
+            }
+            if (attr.hasValue(R.styleable.SearchView_search_suggestions_limit)) {
+                setSuggestionsLimit(attr.getInt(R.styleable.SearchView_search_suggestions_limit, SUGGESTIONS_LIMIT));
+            }
+            if (attr.hasValue(R.styleable.SearchView_search_hardware_layers)) {
+                setHardwareLayersEnabled(attr.getBoolean(R.styleable.SearchView_search_hardware_layers, true));
+            }
 
             attr.recycle();
         }
     }
 
     // ---------------------------------------------------------------------------------------------
+    // applied at once, open and close depend on it, together with any style still pending
     public void setVersion(int version) {
         mVersion = version;
+        invalidateStyle(STYLE_VERSION);
+        if (mStyleReady) {
+            applyStyle();
+        }
+    }
 
+    private void applyVersion() {
         if (mVersion == VERSION_TOOLBAR) {
             mEditText.clearFocus();
-            mSearchArrow = new SearchArrowDrawable(mContext);
+            if (mSearchArrow == null) {
+                mSearchArrow = new SearchArrowDrawable(mContext);
+            }
 
             mBackImageView.setImageDrawable(mSearchArrow);
 
@@ -342,10 +559,14 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setVersionMargins(int version) {
-        CardView.LayoutParams params = new CardView.LayoutParams(
-                CardView.LayoutParams.MATCH_PARENT,
-                CardView.LayoutParams.WRAP_CONTENT
-        );
+        mVersionMargins = version;
+        invalidateStyle(STYLE_MARGINS);
+    }
+
+    private void applyVersionMargins() {
+        // the card keeps its params, only the margins change
+        MarginLayoutParams params = (MarginLayoutParams) mCardView.getLayoutParams();
+        int version = mVersionMargins;
 
         if (version == VERSION_MARGINS_TOOLBAR_SMALL) {
             int top = mContext.getResources().getDimensionPixelSize(R.dimen.search_toolbar_margin_top);
@@ -370,6 +591,7 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         mCardView.setLayoutParams(params);
     }
 
+    // colours are recorded through their setters and applied in one pass
     public void setTheme(int theme, boolean tint) {
         if (theme == THEME_LIGHT) {
             setBackgroundColor(ContextCompat.getColor(mContext, R.color.search_light_background));
@@ -393,22 +615,23 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setNavigationIcon(int resource) {
-        if (mVersion != VERSION_TOOLBAR) {
-            mBackImageView.setImageResource(resource);
-        }
+        mNavigationIconResource = resource;
+        mNavigationIcon = null;
+        invalidateStyle(STYLE_NAVIGATION_ICON);
     }
 
+    // null hides the navigation icon
     public void setNavigationIcon(Drawable drawable) {
-        if (drawable == null) {
-            mBackImageView.setVisibility(View.GONE);
-        } else if (mVersion != VERSION_TOOLBAR) {
-            mBackImageView.setImageDrawable(drawable);
-        }
+        mNavigationIconResource = 0;
+        mNavigationIcon = drawable;
+        mNavigationIconHidden = drawable == null;
+        invalidateStyle(STYLE_NAVIGATION_ICON);
     }
 
     @Override
     public void setBackgroundColor(@ColorInt int color) {
-        mCardView.setCardBackgroundColor(color);
+        mBackgroundColor = color;
+        invalidateStyle(STYLE_BACKGROUND_COLOR);
     }
 
     public void setText(CharSequence text) {
@@ -421,7 +644,8 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setTextSize(float size) {
-        mEditText.setTextSize(TypedValue.COMPLEX_UNIT_SP, size);
+        mTextSize = size;
+        invalidateStyle(STYLE_TEXT_SIZE);
     }
 
     public void setHint(CharSequence hint) {
@@ -434,7 +658,8 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setHintColor(@ColorInt int color) {
-        mEditText.setHintTextColor(color);
+        mHintColor = color;
+        invalidateStyle(STYLE_HINT_COLOR);
     }
 
     public void setAnimationDuration(int animationDuration) {
@@ -442,6 +667,7 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setShadow(boolean shadow) {
+        mSearchAnimator.cancelShadow(shadow);
         if (shadow) {
             mShadowView.setVisibility(View.VISIBLE);
         } else {
@@ -451,14 +677,93 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     }
 
     public void setShadowColor(@ColorInt int color) {
-        mShadowView.setBackgroundColor(color);
+        mShadowColor = color;
+        invalidateStyle(STYLE_SHADOW_COLOR);
     }
 
     @Override
     public void setElevation(float elevation) {
-        mCardView.setMaxCardElevation(elevation);
-        mCardView.setCardElevation(elevation);
-        invalidate();
+        mElevation = elevation;
+        invalidateStyle(STYLE_ELEVATION);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    /**
+     * Style setters only record their value and mark it dirty. The constructor applies defaults
+     * and XML attributes in one pass, later changes are batched into one pass on the next frame,
+     * so every child view is touched once however many setters ran.
+     */
+    private void invalidateStyle(int parts) {
+        mDirtyStyle |= parts;
+        if (mStyleReady && !mStylePosted) {
+            mStylePosted = true;
+            ViewCompat.postOnAnimation(this, mApplyStyle);
+        }
+    }
+
+    private void applyStyle() {
+        int dirty = mDirtyStyle;
+        mDirtyStyle = 0;
+        if (dirty == 0) {
+            return;
+        }
+
+        if ((dirty & STYLE_VERSION) != 0) {
+            applyVersion();
+        }
+        // a version change replaces the icons, they need the custom one and the tint again
+        if ((dirty & (STYLE_VERSION | STYLE_NAVIGATION_ICON)) != 0 && mVersion != VERSION_TOOLBAR) {
+            if (mNavigationIcon != null) {
+                mBackImageView.setImageDrawable(mNavigationIcon);
+            } else if (mNavigationIconResource != 0) {
+                mBackImageView.setImageResource(mNavigationIconResource);
+            }
+        }
+        if ((dirty & STYLE_NAVIGATION_ICON) != 0 && mNavigationIconHidden) {
+            mBackImageView.setVisibility(View.GONE);
+        }
+        if ((dirty & (STYLE_VERSION | STYLE_ICON_COLOR)) != 0) {
+            ColorFilter colorFilter = new PorterDuffColorFilter(mIconColor, PorterDuff.Mode.SRC_IN);
+            mBackImageView.setColorFilter(colorFilter);
+            mEmptyImageView.setColorFilter(colorFilter);
+            if (mSearchArrow != null) {
+                mSearchArrow.setColorFilter(colorFilter);
+            }
+        }
+        if ((dirty & STYLE_MARGINS) != 0) {
+            applyVersionMargins();
+        }
+        if ((dirty & STYLE_BACKGROUND_COLOR) != 0) {
+            mCardView.setCardBackgroundColor(mBackgroundColor);
+        }
+        if ((dirty & STYLE_ELEVATION) != 0) {
+            mCardView.setMaxCardElevation(mElevation);
+            mCardView.setCardElevation(mElevation);
+        }
+        if ((dirty & STYLE_SHADOW_COLOR) != 0) {
+            mShadowView.setBackgroundColor(mShadowColor);
+        }
+        if ((dirty & STYLE_TEXT_COLOR) != 0) {
+            mEditText.setTextColor(mTextColor);
+        }
+        if ((dirty & STYLE_HINT_COLOR) != 0) {
+            mEditText.setHintTextColor(mHintColor);
+        }
+        if ((dirty & STYLE_TEXT_SIZE) != 0) {
+            mEditText.setTextSize(TypedValue.COMPLEX_UNIT_SP, mTextSize);
+        }
+        if ((dirty & STYLE_TYPEFACE) != 0) {
+            mEditText.setTypeface(Typeface.create(mTextFont, mTextStyle));
+        }
+    }
+
+    public boolean isHardwareLayersEnabled() {
+        return mSearchAnimator.getHardwareLayers();
+    }
+
+    // the card and the shadow are drawn from hardware layers while they animate, on by default
+    public void setHardwareLayersEnabled(boolean enabled) {
+        mSearchAnimator.setHardwareLayers(enabled);
     }
 
     public boolean getShouldClearOnClose() {
@@ -477,6 +782,127 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         mShouldClearOnOpen = shouldClearOnOpen;
     }
 
+    public SuggestionIndex getSuggestionIndex() {
+        return mSuggestionIndex;
+    }
+
+    public void setSuggestionIndex(SuggestionIndex index) {
+        // all set before the lookup, requests must carry the new index's mod count
+        mSuggestionProvider = index == null ? null : new SuggestionRefiner(index);
+        mSuggestionIndex = index;
+        mSuggestionModCount = index == null ? 0 : index.getModCount();
+        invalidateSuggestions();
+    }
+
+    public SuggestionProvider getSuggestionProvider() {
+        return mSuggestionProvider;
+    }
+
+    public void setSuggestionProvider(SuggestionProvider provider) {
+        mSuggestionIndex = null;
+        mSuggestionProvider = provider;
+        invalidateSuggestions();
+    }
+
+    public SuggestionCache getSuggestionCache() {
+        return mSuggestionCache;
+    }
+
+    // null turns caching off
+    public void setSuggestionCache(SuggestionCache cache) {
+        mSuggestionCache = cache;
+    }
+
+    // call when the provider's data changed, an index set through setSuggestionIndex is tracked
+    public void invalidateSuggestions() {
+        if (mSuggestionCache != null) {
+            mSuggestionCache.clear();
+        }
+        updateSuggestions(mEditText.getText());
+    }
+
+    public SearchHistoryStore getSearchHistoryStore() {
+        return mHistoryStore;
+    }
+
+    // submitted queries are added to the store and shown above the suggestions
+    public void setSearchHistoryStore(SearchHistoryStore store) {
+        if (mHistoryStore != null && ViewCompat.isAttachedToWindow(this)) {
+            mHistoryStore.removeOnHistoryChangeListener(mOnHistoryChangeListener);
+        }
+        mHistoryStore = store;
+        if (store != null && ViewCompat.isAttachedToWindow(this)) {
+            store.addOnHistoryChangeListener(mOnHistoryChangeListener);
+        }
+        updateSuggestions(mEditText.getText());
+    }
+
+    // providers and result diffs run on a shared background thread unless another executor is set
+    public void setSuggestionExecutor(Executor executor) {
+        mSuggestionExecutor = executor;
+        mSearchAdapter.setExecutor(getSuggestionExecutor());
+    }
+
+    public boolean isFuzzy() {
+        return mFuzzy;
+    }
+
+    public void setFuzzy(boolean fuzzy) {
+        mFuzzy = fuzzy;
+        updateSuggestions(mEditText.getText());
+    }
+
+    public int getQueryTextChangeDelay() {
+        return mQueryTextChangeDelay;
+    }
+
+    // quiet period in ms before onQueryTextChange fires, 0 dispatches every keystroke
+    public void setQueryTextChangeDelay(int delay) {
+        mQueryTextChangeDelay = delay;
+        if (delay <= 0) {
+            flushQueryTextChange();
+        }
+    }
+
+    public int getQueryTextChangeMaxWait() {
+        return mQueryTextChangeMaxWait;
+    }
+
+    // longest a burst of keystrokes can hold back onQueryTextChange, 0 means no limit
+    public void setQueryTextChangeMaxWait(int maxWait) {
+        mQueryTextChangeMaxWait = maxWait;
+    }
+
+    public int getSuggestionsLimit() {
+        return mSuggestionsLimit;
+    }
+
+    // rows shown in the results list, history included; ranking keeps no more than this
+    public void setSuggestionsLimit(int limit) {
+        mSuggestionsLimit = Math.max(0, limit);
+        SearchItemPool.ensureSize(mSuggestionsLimit);
+        updateSuggestions(mEditText.getText());
+    }
+
+    /**
+     * Inflates result rows into the pool shared by all SearchViews while the main thread is idle,
+     * so the first results on any screen reuse them. Call it on the main thread, for instance
+     * from Application.onCreate with the suggestions limit. Rows are themed like the context,
+     * screens with a theme that styles them differently inflate their own.
+     */
+    public static void preloadSuggestionRows(Context context, int count) {
+        SearchItemPool.preload(context, count);
+    }
+
+    public int getMatchMode() {
+        return mMatchMode;
+    }
+
+    public void setMatchMode(int matchMode) {
+        mMatchMode = matchMode;
+        updateSuggestions(mEditText.getText());
+    }
+
     // ---------------------------------------------------------------------------------------------
     @SuppressWarnings("SameParameterValue")
     public void open(boolean animate) {
@@ -487,9 +913,10 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                     reveal();
                 } else {
-                    SearchAnimator.fadeOpen(mCardView, mAnimationDuration, mEditText, mShouldClearOnOpen, mOnOpenCloseListener);
+                    mSearchAnimator.fadeOpen(mAnimationDuration);
                 }
             } else {
+                mSearchAnimator.cancelCard();
                 mCardView.setVisibility(View.VISIBLE);
                 if (mShouldClearOnOpen && mEditText.length() > 0) {
                     mEditText.getText().clear();
@@ -516,11 +943,12 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         if (mVersion == VERSION_MENU_ITEM) {
             if (animate) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    SearchAnimator.revealClose(mCardView, mAnimationDuration, mContext, mEditText, mShouldClearOnClose, this, mOnOpenCloseListener);
+                    mSearchAnimator.revealClose(mAnimationDuration);
                 } else {
-                    SearchAnimator.fadeClose(mCardView, mAnimationDuration, mEditText, mShouldClearOnClose, this, mOnOpenCloseListener);
+                    mSearchAnimator.fadeClose(mAnimationDuration);
                 }
             } else {
+                mSearchAnimator.cancelCard();
                 if (mShouldClearOnClose && mEditText.length() > 0) {
                     mEditText.getText().clear();
                 }
@@ -547,10 +975,11 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         mIsSearchOpen = true;
         setArrow();
         if (mShadow) {
-            SearchAnimator.fadeIn(mShadowView, mAnimationDuration);
+            mSearchAnimator.fadeIn(mAnimationDuration);
         }
         showKeyboard();
         showClearTextIcon();
+        updateSuggestions(mEditText.getText());
         if (mVersion != VERSION_MENU_ITEM) {
             postDelayed(new Runnable() {
                 @Override
@@ -566,13 +995,14 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
     public void removeFocus() {
         mIsSearchOpen = false;
         if (mShadow) {
-            SearchAnimator.fadeOut(mShadowView, mAnimationDuration);
+            mSearchAnimator.fadeOut(mAnimationDuration);
         }
         if (mEditText.getText().length() == 0) {
             setHamburger();
         }
         hideKeyboard();
         mEmptyImageView.setVisibility(View.GONE);
+        mSearchAdapter.clear();
         if (mVersion != VERSION_MENU_ITEM) {
             postDelayed(new Runnable() {
                 @Override
@@ -591,9 +1021,13 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
 
     // ---------------------------------------------------------------------------------------------
     private void onSubmitQuery() {
+        flushQueryTextChange();
         CharSequence query = mEditText.getText();
         if (query != null && TextUtils.getTrimmedLength(query) > 0) {
-            if (mOnQueryChangeListener == null || !mOnQueryChangeListener.onQueryTextSubmit(query.toString())) {
+            if (mHistoryStore != null) {
+                mHistoryStore.add(query);
+            }
+            if (mOnQueryChangeListener != null) {
                 mOnQueryChangeListener.onQueryTextSubmit(query.toString());
             }
         }
@@ -604,7 +1038,7 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         CharSequence text = mEditText.getText();
         mUserQuery = text;
         if (mOnQueryChangeListener != null && !TextUtils.equals(newText, mOldQueryText)) {
-            mOnQueryChangeListener.onQueryTextChange(newText.toString());
+            scheduleQueryTextChange(newText.toString());
         }
         mOldQueryText = newText.toString();
 
@@ -613,6 +1047,211 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         } else {
             hideClearTextIcon();
         }
+        updateSuggestions(newText);
+    }
+
+    private void scheduleQueryTextChange(String query) {
+        mPendingQueryText = query;
+        if (mQueryTextChangeDelay <= 0) {
+            dispatchQueryTextChange();
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long delay = mQueryTextChangeDelay;
+        removeCallbacks(mDispatchQueryTextChange);
+        if (mPendingSince == 0) {
+            mPendingSince = now;
+        }
+        if (mQueryTextChangeMaxWait > 0) {
+            delay = Math.max(0, Math.min(delay, mPendingSince + mQueryTextChangeMaxWait - now));
+        }
+        postDelayed(mDispatchQueryTextChange, delay);
+    }
+
+    private void flushQueryTextChange() {
+        if (mPendingQueryText != null) {
+            removeCallbacks(mDispatchQueryTextChange);
+            dispatchQueryTextChange();
+        }
+    }
+
+    private void dispatchQueryTextChange() {
+        String query = mPendingQueryText;
+        mPendingQueryText = null;
+        mPendingSince = 0;
+        // a burst that ends where it started is not a change
+        if (query != null && mOnQueryChangeListener != null && !TextUtils.equals(query, mDispatchedQueryText)) {
+            mDispatchedQueryText = query;
+            mOnQueryChangeListener.onQueryTextChange(query);
+        }
+    }
+
+    private void updateSuggestions(CharSequence query) {
+        if (mSuggestionRequest != null) {
+            mSuggestionRequest.cancel();
+            mSuggestionRequest = null;
+        }
+        if (!mIsSearchOpen) {
+            mSearchAdapter.clear();
+            return;
+        }
+        if (mSuggestionProvider == null || TextUtils.isEmpty(query)) {
+            if (mHistoryStore == null) {
+                mSearchAdapter.clear();
+            } else {
+                setResults(SuggestionResults.EMPTY, query);
+            }
+            return;
+        }
+
+        if (mSuggestionIndex != null && mSuggestionIndex.getModCount() != mSuggestionModCount) {
+            mSuggestionModCount = mSuggestionIndex.getModCount();
+            if (mSuggestionCache != null) {
+                mSuggestionCache.clear();
+            }
+        }
+        final String key = mSuggestionCache == null ? null : SuggestionCache.key(query, mMatchMode, mFuzzy, mSuggestionsLimit);
+        if (key != null) {
+            SuggestionResults cached = mSuggestionCache.get(key);
+            if (cached != null) {
+                setResults(cached, query);
+                return;
+            }
+        }
+
+        final SuggestionProvider provider = mSuggestionProvider;
+        final SuggestionRequest request = new SuggestionRequest(++mSuggestionSequence, query.toString(), mMatchMode, mFuzzy, mSuggestionsLimit, mSuggestionModCount);
+        mSuggestionRequest = request;
+        if (mKeystrokeTime != 0 && !mKeystrokeDispatched) {
+            mMetrics.record(SearchMetrics.STAGE_DISPATCH, System.nanoTime() - mKeystrokeTime);
+            mKeystrokeDispatched = true;
+        }
+        // from dispatch to delivery on the main thread, or to the point where the request was dropped
+        final int cookie = SearchTrace.beginAsync("SearchView.suggestions");
+        getSuggestionExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) {
+                    SearchTrace.endAsync("SearchView.suggestions", cookie);
+                    return;
+                }
+                final SuggestionResults results;
+                boolean traced = SearchTrace.begin("SuggestionProvider.getSuggestions");
+                try {
+                    results = provider.getSuggestions(request);
+                } catch (RuntimeException e) {
+                    // a failing provider loses its request, not the app
+                    Log.w(TAG, "Suggestions for \"" + request.getQuery() + "\" failed", e);
+                    SearchTrace.endAsync("SearchView.suggestions", cookie);
+                    return;
+                } finally {
+                    SearchTrace.end(traced);
+                }
+                if (results == null || request.isCancelled()) {
+                    SearchTrace.endAsync("SearchView.suggestions", cookie);
+                    return;
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        SearchTrace.endAsync("SearchView.suggestions", cookie);
+                        onSuggestionsReady(request, key, results);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onSuggestionsReady(SuggestionRequest request, String key, SuggestionResults results) {
+        // anything but the latest request is stale by now
+        if (request != mSuggestionRequest || request.isCancelled()) {
+            return;
+        }
+        mSuggestionRequest = null;
+        // ids from before a clear name other items by now, the query is looked up again
+        if (!results.isReadable()) {
+            updateSuggestions(request.getQuery());
+            return;
+        }
+        // results computed before the index changed are shown once but not kept
+        boolean current = mSuggestionIndex == null || mSuggestionIndex.getModCount() == request.getModCount();
+        if (key != null && mSuggestionCache != null && current) {
+            mSuggestionCache.put(key, results);
+        }
+        setResults(results, request.getQuery());
+    }
+
+    // history is merged in at display time so cached results stay valid as it changes
+    private void setResults(SuggestionResults results, CharSequence query) {
+        if (mHistoryStore != null) {
+            int limit = TextUtils.isEmpty(query) || results.isEmpty() ? mSuggestionsLimit : mSuggestionsLimit / 2;
+            results = results.withHistory(mHistoryStore.find(query, limit), query.length(), mSuggestionsLimit);
+        }
+        if (!results.isEmpty()) {
+            inflateResults();
+        }
+        if (mKeystrokeTime != 0 && !mKeystrokeResults) {
+            mMetrics.record(SearchMetrics.STAGE_RESULTS, System.nanoTime() - mKeystrokeTime);
+            mKeystrokeResults = true;
+        }
+        mSearchAdapter.setResults(results);
+    }
+
+    private void onResultsChanged() {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.start(TRANSITION_RESULTS);
+        }
+        mResultsChanged = true;
+    }
+
+    // the list has its new layout, its item animations are queued and run from the next frame
+    private void onResultsLaidOut() {
+        RecyclerView.ItemAnimator animator = mRecyclerView == null ? null : mRecyclerView.getItemAnimator();
+        if (animator == null) {
+            mResultsSettledListener.onAnimationsFinished();
+        } else {
+            animator.isRunning(mResultsSettledListener);
+        }
+    }
+
+    // screens that never get a result never pay for the list
+    private void inflateResults() {
+        if (mRecyclerView != null) {
+            return;
+        }
+        View layout = mResultStub.inflate();
+        mResultStub = null;
+        mRecyclerView = (RecyclerView) layout.findViewById(R.id.recyclerView_result);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        mRecyclerView.setItemAnimator(new DefaultItemAnimator());
+        mRecyclerView.setRecycledViewPool(SearchItemPool.get(mSuggestionsLimit));
+        mRecyclerView.setAdapter(mSearchAdapter);
+    }
+
+    private Executor getSuggestionExecutor() {
+        if (mSuggestionExecutor != null) {
+            return mSuggestionExecutor;
+        }
+        synchronized (SearchView.class) {
+            if (sSuggestionExecutor == null) {
+                sSuggestionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "SearchView suggestions");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return sSuggestionExecutor;
+        }
     }
 
     public void showKeyboard() {
@@ -664,11 +1303,40 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
             @Override
             public void onGlobalLayout() {
                 mCardView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                SearchAnimator.revealOpen(mCardView, mAnimationDuration, mContext, mEditText, mShouldClearOnOpen, mOnOpenCloseListener);
+                mSearchAnimator.revealOpen(mAnimationDuration);
             }
         });
     }
 
+    // ---------------------------------------------------------------------------------------------
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnPreDrawListener(mResultsPreDrawListener);
+        if (mHistoryStore != null) {
+            mHistoryStore.addOnHistoryChangeListener(mOnHistoryChangeListener);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // a posted dispatch would otherwise keep the view alive and fire after it is gone
+        flushQueryTextChange();
+        mSearchAnimator.end();
+        if (mSearchArrow != null) {
+            mSearchArrow.end();
+        }
+        getViewTreeObserver().removeOnPreDrawListener(mResultsPreDrawListener);
+        mResultsChanged = false;
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stopAll();
+        }
+        if (mHistoryStore != null) {
+            mHistoryStore.removeOnHistoryChangeListener(mOnHistoryChangeListener);
+        }
+        super.onDetachedFromWindow();
+    }
+
     // ---------------------------------------------------------------------------------------------
     @Override
     public void onClick(View v) {
@@ -715,6 +1383,31 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         mOnMenuClickListener = listener;
     }
 
+    public void setOnTransitionListener(OnTransitionListener listener) {
+        mSearchAnimator.setOnTransitionListener(listener);
+    }
+
+    /**
+     * Records frame times with Choreographer during every transition and while the results list
+     * settles after an update, and reports them when each one ends. Off until a listener is set,
+     * null turns it off again. Needs API 16, on older versions nothing is recorded.
+     */
+    public void setOnFrameStatsListener(OnFrameStatsListener listener) {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stopAll();
+            mFrameMonitor = null;
+        }
+        if (listener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameMonitor = new SearchFrameMonitor(mContext, listener);
+        }
+        mSearchAnimator.setFrameMonitor(mFrameMonitor);
+    }
+
+    // latency from each keystroke to the stages of the query pipeline, always recorded
+    public SearchMetrics getSearchMetrics() {
+        return mMetrics;
+    }
+
     // ---------------------------------------------------------------------------------------------
 
     public interface OnQueryTextListener {
@@ -735,6 +1428,20 @@ public class SearchView extends FrameLayout implements View.OnClickListener {
         void onMenuClick();
     }
 
+    /**
+     * Start and end of every open, close and shadow animation, for timing them with and without
+     * hardware layers. A transition cut short by a reversal or a jump ends cancelled.
+     */
+    public interface OnTransitionListener {
+        void onTransitionStart(int transition);
+
+        void onTransitionEnd(int transition, long durationNanos, boolean hardwareLayer, boolean cancelled);
+    }
+
+    public interface OnFrameStatsListener {
+        void onFrameStats(SearchFrameStats stats);
+    }
+
     @Override protected Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
         SavedState savedState = new SavedState(superState);
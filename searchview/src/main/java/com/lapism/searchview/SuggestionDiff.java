@@ -0,0 +1,177 @@
+package com.lapism.searchview;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Item-level changes between two result lists, computed off the main thread and replayed on an
+ * adapter as inserts, removals, moves and changes. Rows are matched by their case-folded text and
+ * history flag; rows on the longest common subsequence stay put, other rows found in both lists
+ * are moved and a row whose text changed case or whose highlighted match moved is reported as
+ * changed.
+ */
+class SuggestionDiff {
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    // (type, position, count or target) triples in dispatch order
+    private int[] mOps = new int[24];
+    private int mOpCount;
+
+    private SuggestionDiff() {
+    }
+
+    static SuggestionDiff compute(SuggestionResults oldResults, SuggestionResults newResults) {
+        String[] oldTexts = texts(oldResults);
+        String[] newTexts = texts(newResults);
+        String[] oldKeys = keys(oldResults, oldTexts);
+        String[] newKeys = keys(newResults, newTexts);
+        int n = oldKeys.length;
+        int m = newKeys.length;
+
+        // lengths of the longest common subsequence of every pair of suffixes
+        int[] lcs = new int[(n + 1) * (m + 1)];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i * (m + 1) + j] = oldKeys[i].equals(newKeys[j])
+                        ? lcs[(i + 1) * (m + 1) + j + 1] + 1
+                        : Math.max(lcs[(i + 1) * (m + 1) + j], lcs[i * (m + 1) + j + 1]);
+            }
+        }
+        boolean[] oldKept = new boolean[n];
+        boolean[] newKept = new boolean[m];
+        for (int i = 0, j = 0; i < n && j < m; ) {
+            if (oldKeys[i].equals(newKeys[j])) {
+                oldKept[i++] = true;
+                newKept[j++] = true;
+            } else if (lcs[(i + 1) * (m + 1) + j] >= lcs[i * (m + 1) + j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        SuggestionDiff diff = new SuggestionDiff();
+        List<String> current = new ArrayList<>(Arrays.asList(oldKeys));
+
+        // rows gone from the new list, last first so earlier positions stay valid
+        for (int i = n - 1; i >= 0; i--) {
+            if (!oldKept[i] && indexOf(newKeys, oldKeys[i], newKept) < 0) {
+                diff.add(REMOVE, i, 1);
+                current.remove(i);
+            }
+        }
+
+        // then every position is settled left to right
+        for (int j = 0; j < m; j++) {
+            if (!newKept[j] && current.indexOf(newKeys[j]) < 0) {
+                diff.add(INSERT, j, 1);
+                current.add(j, newKeys[j]);
+                continue;
+            }
+            int from = current.indexOf(newKeys[j]);
+            if (newKept[j]) {
+                // rows of the subsequence never move, rows still waiting for their slot step aside
+                while (from > j) {
+                    diff.add(MOVE, j, from);
+                    current.add(from, current.remove(j));
+                    from--;
+                }
+            } else if (from != j) {
+                diff.add(MOVE, from, j);
+                current.add(j, current.remove(from));
+            }
+        }
+
+        for (int j = 0; j < m; j++) {
+            int i = indexOf(oldKeys, newKeys[j], null);
+            if (i >= 0 && (!oldTexts[i].equals(newTexts[j])
+                    || oldResults.getMatchStart(i) != newResults.getMatchStart(j)
+                    || oldResults.getMatchEnd(i) != newResults.getMatchEnd(j))) {
+                diff.add(CHANGE, j, 1);
+            }
+        }
+        return diff;
+    }
+
+    void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        for (int op = 0; op < mOpCount; op += 3) {
+            int position = mOps[op + 1];
+            int value = mOps[op + 2];
+            switch (mOps[op]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, value);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, value);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(position, value);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(position, value);
+                    break;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static String[] texts(SuggestionResults results) {
+        String[] texts = new String[results.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = results.getText(i);
+        }
+        return texts;
+    }
+
+    // repeated texts are numbered so that every key is unique within its list
+    private static String[] keys(SuggestionResults results, String[] texts) {
+        String[] keys = new String[texts.length];
+        for (int i = 0; i < keys.length; i++) {
+            String key = (results.isHistory(i) ? 'h' : 's') + SuggestionIndex.normalize(texts[i]);
+            int repeat = 0;
+            while (indexOf(keys, repeat == 0 ? key : key + '\0' + repeat, null) >= 0) {
+                repeat++;
+            }
+            keys[i] = repeat == 0 ? key : key + '\0' + repeat;
+        }
+        return keys;
+    }
+
+    private static int indexOf(String[] keys, String key, boolean[] skip) {
+        for (int i = 0; i < keys.length; i++) {
+            if ((skip == null || !skip[i]) && key.equals(keys[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // neighbouring inserts, removals and changes are merged into ranges
+    private void add(int type, int position, int value) {
+        int last = mOpCount - 3;
+        if (last >= 0 && mOps[last] == type && type != MOVE) {
+            int start = mOps[last + 1];
+            int count = mOps[last + 2];
+            if ((type == REMOVE && position + 1 == start) || (type != REMOVE && position == start + count)) {
+                mOps[last + 1] = Math.min(start, position);
+                mOps[last + 2] = count + 1;
+                return;
+            }
+        }
+        if (mOpCount + 3 > mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[mOpCount++] = type;
+        mOps[mOpCount++] = position;
+        mOps[mOpCount++] = value;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.lapism.searchview;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Diffs run on the calling thread and Robolectric runs what they post to the main thread right
+ * away, so every update has reached the observer when setResults returns.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SearchAdapterTest {
+
+    private final List<String> mEvents = new ArrayList<>();
+    private SearchAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mAdapter = new SearchAdapter();
+        mAdapter.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mEvents.add("changed");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mEvents.add("changed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mEvents.add("inserted " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mEvents.add("removed " + positionStart + " " + itemCount);
+            }
+        });
+    }
+
+    @Test
+    public void resultsOfAnUnchangedIndexAreDiffed() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("apple", "apricot", "avocado"));
+        mAdapter.setResults(index.search("a", 10));
+        mAdapter.setResults(index.search("ap", 10));
+
+        // the highlight grew on both rows that stayed
+        assertEquals(Arrays.asList("inserted 0 3", "removed 2 1", "changed 0 2"), mEvents);
+        assertEquals(2, mAdapter.getItemCount());
+    }
+
+    @Test
+    public void resultsFromBeforeAClearAreReplaced() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("apple", "apricot", "avocado"));
+        mAdapter.setResults(index.search("a", 10));
+        // the old ids now name other items, the last one none at all
+        index.clear();
+        index.addAll(Arrays.asList("banana", "blueberry"));
+        mAdapter.setResults(index.search("b", 10));
+
+        assertEquals(Arrays.asList("inserted 0 3", "changed"), mEvents);
+        assertEquals(2, mAdapter.getItemCount());
+    }
+
+    @Test
+    public void newColoursRebindTheRows() {
+        mAdapter.setIconColor(0xff00ff00);
+        mAdapter.setResults(SuggestionResults.of(Arrays.asList("apple", "apricot")));
+        mAdapter.setIconColor(0xff00ff00);
+        mAdapter.setTextHighlightColor(0xffff0000);
+
+        assertEquals(Arrays.asList("inserted 0 2", "changed 0 2"), mEvents);
+    }
+
+    @Test
+    public void emptyResultsStillRemoveTheRows() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("apple"));
+        mAdapter.setResults(index.search("a", 10));
+        index.clear();
+        mAdapter.clear();
+
+        assertEquals(Arrays.asList("inserted 0 1", "removed 0 1"), mEvents);
+        assertEquals(0, mAdapter.getItemCount());
+    }
+
+}
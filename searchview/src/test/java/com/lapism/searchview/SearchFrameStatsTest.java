@@ -0,0 +1,132 @@
+package com.lapism.searchview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Frame times are played into {@link SearchFrameMonitor#doFrame(long)} directly, starting after
+ * the session so that every frame counts. Robolectric's display runs at 60 Hz.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SearchFrameStatsTest {
+
+    private static final long INTERVAL = (long) (1e9 / 60.0f);
+    private static final long MS = 1000000;
+
+    private final List<SearchFrameStats> mStats = new ArrayList<>();
+    private SearchFrameMonitor mMonitor;
+
+    @Before
+    public void setUp() {
+        mMonitor = new SearchFrameMonitor(RuntimeEnvironment.application, new SearchView.OnFrameStatsListener() {
+            @Override
+            public void onFrameStats(SearchFrameStats stats) {
+                mStats.add(stats);
+            }
+        });
+    }
+
+    @Test
+    public void percentilesUseTheNearestRank() {
+        long[] frames = new long[100];
+        for (int i = 0; i < frames.length; i++) {
+            // out of order, the monitor sorts them
+            frames[i] = (100 - i) * MS;
+        }
+        SearchFrameStats stats = record(SearchView.TRANSITION_OPEN, frames);
+
+        assertEquals(SearchView.TRANSITION_OPEN, stats.getType());
+        assertEquals(100, stats.getFrameCount());
+        assertEquals(50 * MS, stats.getPercentile50Nanos());
+        assertEquals(90 * MS, stats.getPercentile90Nanos());
+        assertEquals(95 * MS, stats.getPercentile95Nanos());
+        assertEquals(99 * MS, stats.getPercentile99Nanos());
+        assertEquals(100 * MS, stats.getMaxNanos());
+        assertEquals(INTERVAL, stats.getRefreshIntervalNanos());
+    }
+
+    @Test
+    public void framesMissingAVsyncAreJanky() {
+        // janky from one and a half refresh intervals on
+        SearchFrameStats stats = record(SearchView.TRANSITION_CLOSE,
+                INTERVAL, INTERVAL + MS, INTERVAL * 3 / 2, INTERVAL * 3 / 2 + 1, 2 * INTERVAL, 5 * INTERVAL);
+
+        assertEquals(6, stats.getFrameCount());
+        assertEquals(3, stats.getJankyFrameCount());
+        assertEquals(5 * INTERVAL, stats.getMaxNanos());
+    }
+
+    @Test
+    public void framesPastTheLimitAreOnlyCounted() {
+        long[] frames = new long[SearchFrameMonitor.MAX_FRAMES + 60];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = i < SearchFrameMonitor.MAX_FRAMES ? INTERVAL : 3 * INTERVAL;
+        }
+        SearchFrameStats stats = record(SearchView.TRANSITION_RESULTS, frames);
+
+        assertEquals(frames.length, stats.getFrameCount());
+        assertEquals(60, stats.getJankyFrameCount());
+        assertEquals(INTERVAL, stats.getMaxNanos());
+    }
+
+    @Test
+    public void aSessionWithoutFramesReportsZeros() {
+        SearchFrameStats stats = record(SearchView.TRANSITION_SHADOW_IN);
+
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getJankyFrameCount());
+        assertEquals(0, stats.getPercentile99Nanos());
+        assertEquals(0, stats.getMaxNanos());
+    }
+
+    @Test
+    public void overlappingSessionsAreReportedApart() {
+        mMonitor.start(SearchView.TRANSITION_OPEN);
+        mMonitor.start(SearchView.TRANSITION_SHADOW_IN);
+        long time = System.nanoTime();
+        mMonitor.doFrame(time);
+        mMonitor.doFrame(time += INTERVAL);
+        mMonitor.doFrame(time += INTERVAL);
+        mMonitor.stop(SearchView.TRANSITION_SHADOW_IN);
+        mMonitor.doFrame(time + 3 * INTERVAL);
+        mMonitor.stop(SearchView.TRANSITION_OPEN);
+
+        assertEquals(2, mStats.size());
+        assertEquals(SearchView.TRANSITION_SHADOW_IN, mStats.get(0).getType());
+        assertEquals(2, mStats.get(0).getFrameCount());
+        assertEquals(0, mStats.get(0).getJankyFrameCount());
+        assertEquals(3, mStats.get(1).getFrameCount());
+        assertEquals(1, mStats.get(1).getJankyFrameCount());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private SearchFrameStats record(int type, long... frames) {
+        mMonitor.start(type);
+        play(frames);
+        mMonitor.stop(type);
+        assertEquals(1, mStats.size());
+        return mStats.get(0);
+    }
+
+    // the first frame only sets the time the next one is measured from
+    private void play(long... frames) {
+        long time = System.nanoTime();
+        mMonitor.doFrame(time);
+        for (long frame : frames) {
+            time += frame;
+            mMonitor.doFrame(time);
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+package com.lapism.searchview;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * The store writes on its own thread. A store opened on the same file loads on that thread too,
+ * after every write queued before it, so a second {@link #open()} sees everything flushed so far.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SearchHistoryStoreTest {
+
+    private static final long TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void queriesSurviveAReopen() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("first");
+        store.add("second");
+        store.flush();
+
+        assertEquals(Arrays.asList("second", "first"), open().getTop(10));
+    }
+
+    @Test
+    public void addingAgainMovesAQueryUpAndKeepsItOnce() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("Query");
+        store.add("other");
+        store.add("query ");
+
+        assertEquals(Arrays.asList("query", "other"), store.getTop(10));
+        assertEquals(2, store.size());
+        store.flush();
+        assertEquals(Arrays.asList("query", "other"), open().getTop(10));
+    }
+
+    @Test
+    public void blankQueriesAreIgnored() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("");
+        store.add("   ");
+
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void findMatchesThePrefixIgnoringCase() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("Android");
+        store.add("apple");
+        store.add("banana");
+
+        assertEquals(Arrays.asList("apple", "Android"), store.find("A", 10));
+        assertEquals(Arrays.asList("apple"), store.find("a", 1));
+        assertEquals(Collections.<String>emptyList(), store.find("c", 10));
+    }
+
+    @Test
+    public void theMaxSizeDropsTheLowestRanked() throws Exception {
+        SearchHistoryStore store = open();
+        store.setMaxSize(2);
+        store.add("one");
+        store.add("two");
+        store.add("three");
+
+        assertEquals(Arrays.asList("three", "two"), store.getTop(10));
+    }
+
+    @Test
+    public void listenersHearOfAddsAndClears() throws Exception {
+        SearchHistoryStore store = open();
+        // loads run one after another, the first store's has been announced once the second is done
+        open();
+        final int[] changes = new int[1];
+        store.addOnHistoryChangeListener(new SearchHistoryStore.OnHistoryChangeListener() {
+            @Override
+            public void onHistoryChange() {
+                changes[0]++;
+            }
+        });
+
+        store.add("query");
+        store.add("  ");
+        assertEquals(1, changes[0]);
+        store.clear();
+        assertEquals(2, changes[0]);
+    }
+
+    @Test
+    public void clearIsPersisted() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("one");
+        store.flush();
+        store.clear();
+        store.add("two");
+        store.flush();
+
+        assertEquals(Arrays.asList("two"), open().getTop(10));
+    }
+
+    @Test
+    public void supersededRecordsAreCompacted() throws Exception {
+        SearchHistoryStore store = open();
+        for (int i = 0; i < 500; i++) {
+            store.add("same query");
+            store.flush();
+        }
+
+        assertEquals(Arrays.asList("same query"), open().getTop(10));
+        // the log is rewritten long before it holds every record
+        assertTrue(file().length() < 200 * (1 + 8 + 8 + 2 + "same query".length() * 2));
+    }
+
+    @Test
+    public void aTornLastRecordIsDroppedAndLaterWritesAreKept() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("one");
+        store.flush();
+        store.add("two");
+        store.flush();
+        open();
+        truncate(3);
+
+        store = open();
+        assertEquals(Arrays.asList("one"), store.getTop(10));
+        store.add("three");
+        store.flush();
+        assertEquals(Arrays.asList("three", "one"), open().getTop(10));
+    }
+
+    @Test
+    public void aFileOfAnotherFormatIsNeverWritten() throws Exception {
+        byte[] foreign = "not a search history log".getBytes("UTF-8");
+        writeFile(foreign);
+        assertLeftAlone(foreign);
+    }
+
+    @Test
+    public void aLogOfANewerVersionIsNeverWritten() throws Exception {
+        // the history magic, SVHS, and version 99
+        byte[] newer = {0x53, 0x56, 0x48, 0x53, 0, 0, 0, 99, 1, 2, 3};
+        writeFile(newer);
+        assertLeftAlone(newer);
+    }
+
+    @Test
+    public void aFileShorterThanTheHeaderIsNeverWritten() throws Exception {
+        byte[] shorter = {0x53, 0x56, 0x48};
+        writeFile(shorter);
+        assertLeftAlone(shorter);
+    }
+
+    @Test
+    public void frequentQueriesOutrankRecentOnes() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("often");
+        store.add("often");
+        store.add("often");
+        store.add("once");
+
+        assertEquals(Arrays.asList("often", "once"), store.getTop(10));
+        assertEquals(3, store.getScore("often"), 0.01);
+        assertEquals(1, store.getScore("ONCE"), 0.01);
+        assertEquals(0, store.getScore("never"), 0);
+    }
+
+    @Test
+    public void scoresDecayWithTheHalfLife() throws Exception {
+        SearchHistoryStore store = open(20);
+        store.add("old");
+        store.add("old");
+        Thread.sleep(100);
+        store.add("new");
+
+        assertEquals(Arrays.asList("new", "old"), store.getTop(10));
+        assertTrue(store.getScore("old") < 0.5);
+    }
+
+    @Test
+    public void ranksSurviveAReopen() throws Exception {
+        SearchHistoryStore store = open();
+        store.add("often");
+        store.add("once");
+        store.add("often");
+        store.flush();
+
+        store = open();
+        assertEquals(Arrays.asList("often", "once"), store.getTop(10));
+        assertEquals(2, store.getScore("often"), 0.01);
+    }
+
+    @Test
+    public void aVersionOneLogIsUpgradedBeforeAppending() throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file()));
+        try {
+            out.writeInt(0x53564853);
+            out.writeInt(1);
+            // type, time, length and text, version 1 records have no rank
+            out.writeByte(1);
+            out.writeLong(System.currentTimeMillis());
+            out.writeChar(3);
+            out.writeChars("old");
+        } finally {
+            out.close();
+        }
+
+        SearchHistoryStore store = open();
+        assertEquals(Arrays.asList("old"), store.getTop(10));
+        store.add("new");
+        store.flush();
+
+        assertEquals(Arrays.asList("new", "old"), open().getTop(10));
+        RandomAccessFile in = new RandomAccessFile(file(), "r");
+        try {
+            in.seek(4);
+            assertEquals(2, in.readInt());
+        } finally {
+            in.close();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private void assertLeftAlone(byte[] content) throws Exception {
+        SearchHistoryStore store = open();
+        store.add("query");
+        store.flush();
+        assertEquals(Arrays.asList("query"), store.getTop(10));
+
+        open();
+        byte[] actual = new byte[(int) file().length()];
+        RandomAccessFile in = new RandomAccessFile(file(), "r");
+        try {
+            in.readFully(actual);
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(content, actual);
+    }
+
+    private void writeFile(byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file());
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void truncate(int bytes) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file(), "rw");
+        try {
+            out.setLength(out.length() - bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File file() {
+        return new File(mFolder.getRoot(), "history");
+    }
+
+    private SearchHistoryStore open() throws InterruptedException {
+        return open(SearchHistoryStore.DEFAULT_HALF_LIFE);
+    }
+
+    private SearchHistoryStore open(long halfLife) throws InterruptedException {
+        SearchHistoryStore store = new SearchHistoryStore(file(), halfLife);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!store.isLoaded()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("history not loaded");
+            }
+            Thread.sleep(5);
+        }
+        return store;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class SearchMetricsTest {
+
+    private static final int STAGE = SearchMetrics.STAGE_RESULTS;
+
+    @Test
+    public void valuesBelowFourMicrosHaveABucketEach() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, SearchMetrics.bucketOf(micros));
+            assertEquals(micros, SearchMetrics.upperBoundOf(micros));
+        }
+    }
+
+    @Test
+    public void powersOfTwoAreSplitInFour() {
+        assertEquals(4, SearchMetrics.bucketOf(4));
+        assertEquals(7, SearchMetrics.bucketOf(7));
+        assertEquals(4, SearchMetrics.upperBoundOf(4));
+        assertEquals(7, SearchMetrics.upperBoundOf(7));
+        // from 8 on the sub-buckets are wider than one microsecond
+        assertEquals(8, SearchMetrics.bucketOf(8));
+        assertEquals(8, SearchMetrics.bucketOf(9));
+        assertEquals(9, SearchMetrics.bucketOf(10));
+        assertEquals(9, SearchMetrics.upperBoundOf(8));
+        assertEquals(11, SearchMetrics.upperBoundOf(9));
+        assertEquals(12, SearchMetrics.bucketOf(16));
+        assertEquals(15, SearchMetrics.bucketOf(31));
+    }
+
+    @Test
+    public void theTopBucketTakesEverythingAboveTheRange() {
+        long top = SearchMetrics.upperBoundOf(SearchMetrics.BUCKETS - 1);
+
+        assertEquals((1L << 27) - 1, top);
+        assertEquals(SearchMetrics.BUCKETS - 1, SearchMetrics.bucketOf(top));
+        assertEquals(SearchMetrics.BUCKETS - 1, SearchMetrics.bucketOf(top + 1));
+        assertEquals(SearchMetrics.BUCKETS - 1, SearchMetrics.bucketOf(Long.MAX_VALUE));
+        assertEquals(SearchMetrics.BUCKETS - 2, SearchMetrics.bucketOf(SearchMetrics.upperBoundOf(SearchMetrics.BUCKETS - 2)));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndAtMostAQuarterWide() {
+        for (int bucket = 1; bucket < SearchMetrics.BUCKETS; bucket++) {
+            long lower = SearchMetrics.upperBoundOf(bucket - 1) + 1;
+            long upper = SearchMetrics.upperBoundOf(bucket);
+            assertTrue(bucket + " " + lower + " " + upper, lower <= upper);
+            assertEquals(bucket, SearchMetrics.bucketOf(lower));
+            assertEquals(bucket, SearchMetrics.bucketOf(upper));
+            assertTrue(bucket + " " + lower + " " + upper, upper - lower <= lower / 4);
+        }
+    }
+
+    @Test
+    public void percentilesReportTheBucketHoldingTheRank() {
+        SearchMetrics metrics = new SearchMetrics();
+        for (int i = 0; i < 90; i++) {
+            metrics.record(STAGE, 1000000);
+        }
+        for (int i = 0; i < 10; i++) {
+            metrics.record(STAGE, 50000000);
+        }
+        SearchMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(100, snapshot.getCount(STAGE));
+        assertEquals(50000000, snapshot.getMaxNanos(STAGE));
+        // 1000 us falls in 896..1023 us, reported at the bucket's last nanosecond
+        assertEquals(1023999, snapshot.getP50Nanos(STAGE));
+        assertEquals(1023999, snapshot.getPercentileNanos(STAGE, 90));
+        // the bucket of 50 ms ends above the largest value seen, which is reported instead
+        assertEquals(50000000, snapshot.getPercentileNanos(STAGE, 91));
+        assertEquals(50000000, snapshot.getP99Nanos(STAGE));
+        assertEquals(1023999, snapshot.getPercentileNanos(STAGE, 0));
+    }
+
+    @Test
+    public void stagesAreKeptApart() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.record(SearchMetrics.STAGE_DISPATCH, 3000);
+        metrics.record(SearchMetrics.STAGE_RENDER, -5);
+        SearchMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(1, snapshot.getCount(SearchMetrics.STAGE_DISPATCH));
+        assertEquals(3000, snapshot.getP50Nanos(SearchMetrics.STAGE_DISPATCH));
+        assertEquals(0, snapshot.getCount(SearchMetrics.STAGE_RESULTS));
+        assertEquals(0, snapshot.getP99Nanos(SearchMetrics.STAGE_RESULTS));
+        // a negative time lands in the first bucket
+        assertEquals(0, snapshot.getP50Nanos(SearchMetrics.STAGE_RENDER));
+    }
+
+    @Test
+    public void snapshotsDoNotChangeAfterwards() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.record(STAGE, 2000);
+        SearchMetrics.Snapshot snapshot = metrics.snapshot();
+        metrics.record(STAGE, 4000);
+        metrics.reset();
+
+        assertEquals(1, snapshot.getCount(STAGE));
+        assertEquals(2000, snapshot.getMaxNanos(STAGE));
+        assertEquals(0, metrics.snapshot().getCount(STAGE));
+    }
+
+}
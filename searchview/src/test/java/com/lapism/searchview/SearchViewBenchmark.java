@@ -0,0 +1,248 @@
+package com.lapism.searchview;
+
+import android.app.Activity;
+import android.os.Build;
+import android.util.AttributeSet;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Times SearchView construction for every version, margins and theme combination, setVersion
+ * toggling as done by the sample's ToggleActivity, and open/close cycles, and counts the bytes
+ * allocated by each. Results are written as JSON, see {@link #REPORT}.
+ * <p>
+ * Runs on Robolectric, so the numbers are for comparing builds, not devices. Left out of the unit
+ * tests unless asked for: gradlew :searchview:testDebugUnitTest -Psearchview.benchmark. Run from
+ * an IDE it is skipped without the searchview.benchmark system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SearchViewBenchmark {
+
+    static final String ENABLED = "searchview.benchmark";
+    static final String REPORT = "searchview.benchmark.report";
+
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 50;
+
+    private static final int[] VERSIONS = {SearchView.VERSION_TOOLBAR, SearchView.VERSION_TOOLBAR_ICON, SearchView.VERSION_MENU_ITEM};
+    private static final String[] VERSION_NAMES = {"toolbar", "toolbar_icon", "menu_item"};
+    private static final int[] MARGINS = {SearchView.VERSION_MARGINS_TOOLBAR_SMALL, SearchView.VERSION_MARGINS_TOOLBAR_BIG, SearchView.VERSION_MARGINS_MENU_ITEM};
+    private static final String[] MARGINS_NAMES = {"toolbar_small", "toolbar_big", "menu_item"};
+    private static final int[] THEMES = {SearchView.THEME_LIGHT, SearchView.THEME_DARK};
+    private static final String[] THEME_NAMES = {"light", "dark"};
+
+    private final ThreadMXBean mThreads = ManagementFactory.getThreadMXBean();
+    private final JSONArray mResults = new JSONArray();
+    private Activity mActivity;
+    private FrameLayout mContainer;
+    private boolean mAllocations;
+
+    @Before
+    public void setUp() {
+        assumeTrue("pass -P" + ENABLED + " to run", Boolean.getBoolean(ENABLED));
+        mAllocations = mThreads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mThreads).isThreadAllocatedMemorySupported();
+        if (mAllocations) {
+            ((com.sun.management.ThreadMXBean) mThreads).setThreadAllocatedMemoryEnabled(true);
+        }
+
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class);
+        controller.get().setTheme(R.style.Theme_AppCompat_Light_NoActionBar);
+        mActivity = controller.create().start().resume().visible().get();
+        mContainer = new FrameLayout(mActivity);
+        mActivity.setContentView(mContainer);
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        construction();
+        versionToggle();
+        openClose();
+        writeReport();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private void construction() throws JSONException {
+        for (int v = 0; v < VERSIONS.length; v++) {
+            for (int m = 0; m < MARGINS.length; m++) {
+                for (int t = 0; t < THEMES.length; t++) {
+                    AttributeSet attrs = Robolectric.buildAttributeSet()
+                            .addAttribute(R.attr.search_version, VERSION_NAMES[v])
+                            .addAttribute(R.attr.search_version_margins, MARGINS_NAMES[m])
+                            .addAttribute(R.attr.search_theme, THEME_NAMES[t])
+                            .build();
+                    Series series = new Series();
+                    for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                        series.begin();
+                        new SearchView(mActivity, attrs);
+                        series.end(i >= WARMUP);
+                    }
+                    mResults.put(series.toJson("construct")
+                            .put("version", VERSION_NAMES[v])
+                            .put("margins", MARGINS_NAMES[m])
+                            .put("theme", THEME_NAMES[t]));
+                }
+            }
+        }
+    }
+
+    // ToggleActivity switches between the toolbar and the menu item version on an attached view
+    private void versionToggle() throws JSONException {
+        SearchView searchView = attach(SearchView.VERSION_TOOLBAR);
+        Series series = new Series();
+        for (int i = 0; i < 2 * (WARMUP + ITERATIONS); i++) {
+            int version = i % 2 == 0 ? SearchView.VERSION_MENU_ITEM : SearchView.VERSION_TOOLBAR;
+            series.begin();
+            searchView.setVersion(version);
+            searchView.setVersionMargins(version == SearchView.VERSION_TOOLBAR ? SearchView.VERSION_MARGINS_TOOLBAR_BIG : SearchView.VERSION_MARGINS_MENU_ITEM);
+            settle();
+            series.end(i >= 2 * WARMUP);
+        }
+        mResults.put(series.toJson("toggle_version"));
+        mContainer.removeAllViews();
+    }
+
+    // one open followed by one close, animations are run to their end
+    private void openClose() throws JSONException {
+        for (int v = 0; v < VERSIONS.length; v++) {
+            for (boolean animate : new boolean[]{false, true}) {
+                SearchView searchView = attach(VERSIONS[v]);
+                Series series = new Series();
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    series.begin();
+                    searchView.open(animate);
+                    settle();
+                    searchView.close(animate);
+                    settle();
+                    series.end(i >= WARMUP);
+                }
+                mResults.put(series.toJson("open_close")
+                        .put("version", VERSION_NAMES[v])
+                        .put("animate", animate));
+                mContainer.removeAllViews();
+            }
+        }
+    }
+
+    private SearchView attach(int version) {
+        SearchView searchView = new SearchView(mActivity);
+        searchView.setVersion(version);
+        mContainer.addView(searchView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        settle();
+        return searchView;
+    }
+
+    // runs the posted style pass, layout and animation frames
+    private static void settle() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private void writeReport() throws JSONException, IOException {
+        JSONObject report = new JSONObject()
+                .put("library", BuildConfig.VERSION_NAME)
+                .put("sdk", Build.VERSION.SDK_INT)
+                .put("java", System.getProperty("java.version"))
+                .put("warmup", WARMUP)
+                .put("iterations", ITERATIONS)
+                .put("allocations", mAllocations)
+                .put("results", mResults);
+
+        File file = new File(System.getProperty(REPORT, "build/reports/benchmark/searchview.json"));
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(report.toString(2));
+        }
+    }
+
+
+    // nanos and allocated bytes of every measured run
+    private class Series {
+
+        private final long[] mNanos = new long[2 * ITERATIONS];
+        private final long[] mBytes = new long[2 * ITERATIONS];
+        private int mCount = 0;
+        private long mStartNanos;
+        private long mStartBytes;
+
+        void begin() {
+            mStartBytes = allocatedBytes();
+            mStartNanos = System.nanoTime();
+        }
+
+        void end(boolean measured) {
+            long nanos = System.nanoTime() - mStartNanos;
+            long bytes = allocatedBytes() - mStartBytes;
+            if (measured) {
+                mNanos[mCount] = nanos;
+                mBytes[mCount] = bytes;
+                mCount++;
+            }
+        }
+
+        JSONObject toJson(String name) throws JSONException {
+            long[] nanos = Arrays.copyOf(mNanos, mCount);
+            long[] bytes = Arrays.copyOf(mBytes, mCount);
+            Arrays.sort(nanos);
+            Arrays.sort(bytes);
+            return new JSONObject()
+                    .put("name", name)
+                    .put("count", mCount)
+                    .put("minNanos", nanos[0])
+                    .put("p50Nanos", percentile(nanos, 50))
+                    .put("p90Nanos", percentile(nanos, 90))
+                    .put("meanNanos", mean(nanos))
+                    .put("p50Bytes", mAllocations ? percentile(bytes, 50) : -1)
+                    .put("meanBytes", mAllocations ? mean(bytes) : -1);
+        }
+
+        private long allocatedBytes() {
+            if (!mAllocations) {
+                return 0;
+            }
+            return ((com.sun.management.ThreadMXBean) mThreads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        // nearest rank
+        private long percentile(long[] sorted, int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private long mean(long[] values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum / values.length;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class SuggestionCacheTest {
+
+    private static final SuggestionResults RESULTS = SuggestionResults.of(Arrays.asList("one", "two"));
+
+    @Test
+    public void getReturnsWhatWasPut() {
+        SuggestionCache cache = new SuggestionCache();
+        cache.put("a", RESULTS);
+
+        assertSame(RESULTS, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvictedFirst() {
+        SuggestionCache cache = new SuggestionCache(2, Integer.MAX_VALUE);
+        cache.put("a", RESULTS);
+        cache.put("b", RESULTS);
+        cache.get("a");
+        cache.put("c", RESULTS);
+
+        assertEquals(2, cache.size());
+        assertSame(RESULTS, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(RESULTS, cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void bytesBoundTheCache() {
+        SuggestionResults large = SuggestionResults.of(Collections.nCopies(20, "a long suggestion text"));
+        SuggestionCache cache = new SuggestionCache(100, 8 * 1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, large);
+        }
+
+        assertTrue(cache.getBytes() <= 8 * 1024);
+        assertTrue(cache.size() < 10);
+        assertSame(large, cache.get("key9"));
+    }
+
+    @Test
+    public void replacingAnEntryKeepsTheByteCount() {
+        SuggestionCache cache = new SuggestionCache();
+        cache.put("a", RESULTS);
+        int bytes = cache.getBytes();
+        cache.put("a", RESULTS);
+
+        assertEquals(bytes, cache.getBytes());
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void keysTellRequestsApart() {
+        String key = SuggestionCache.key("Query", SuggestionRequest.MATCH_PREFIX, false, 8);
+
+        assertEquals(key, SuggestionCache.key("qUERY", SuggestionRequest.MATCH_PREFIX, false, 8));
+        assertNotEquals(key, SuggestionCache.key("query", SuggestionRequest.MATCH_INFIX, false, 8));
+        assertNotEquals(key, SuggestionCache.key("query", SuggestionRequest.MATCH_PREFIX, true, 8));
+        assertNotEquals(key, SuggestionCache.key("query", SuggestionRequest.MATCH_PREFIX, false, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundsMustBePositive() {
+        new SuggestionCache(0, 1024);
+    }
+
+}
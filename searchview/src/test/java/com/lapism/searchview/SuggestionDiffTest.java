@@ -0,0 +1,162 @@
+package com.lapism.searchview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class SuggestionDiffTest {
+
+    @Test
+    public void replaysIntoTheNewList() {
+        Random random = new Random(9);
+        for (int round = 0; round < 500; round++) {
+            List<String> oldTexts = randomTexts(random);
+            List<String> newTexts = randomTexts(random);
+            Model model = dispatch(SuggestionResults.of(oldTexts), SuggestionResults.of(newTexts));
+            model.assertShows(newTexts);
+        }
+    }
+
+    @Test
+    public void equalListsReportNothing() {
+        List<String> texts = Arrays.asList("apple", "banana", "apple");
+        Model model = dispatch(SuggestionResults.of(texts), SuggestionResults.of(texts));
+
+        assertEquals(0, model.mEvents);
+        model.assertShows(texts);
+    }
+
+    @Test
+    public void reportsCaseChangesAsChanges() {
+        List<String> newTexts = Arrays.asList("Apple", "banana");
+        Model model = dispatch(SuggestionResults.of(Arrays.asList("apple", "banana")), SuggestionResults.of(newTexts));
+
+        assertEquals(1, model.mEvents);
+        assertTrue(model.mChanged.contains(0));
+        model.assertShows(newTexts);
+    }
+
+    @Test
+    public void reportsMovedHighlightsAsChanges() {
+        List<String> texts = Arrays.asList("apple", "banana");
+        Model model = dispatch(SuggestionResults.of(texts, new int[]{0, 2, 0, 2}), SuggestionResults.of(texts, new int[]{0, 2, 1, 3}));
+
+        assertEquals(1, model.mEvents);
+        assertTrue(model.mChanged.contains(1));
+    }
+
+    @Test
+    public void movesRowsInsteadOfReplacingThem() {
+        List<String> newTexts = Arrays.asList("c", "a", "b");
+        Model model = dispatch(SuggestionResults.of(Arrays.asList("a", "b", "c")), SuggestionResults.of(newTexts));
+
+        assertEquals(1, model.mEvents);
+        model.assertShows(newTexts);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static Model dispatch(SuggestionResults oldResults, SuggestionResults newResults) {
+        Model model = new Model(oldResults);
+        Adapter adapter = new Adapter();
+        adapter.registerAdapterDataObserver(model);
+        SuggestionDiff.compute(oldResults, newResults).dispatchTo(adapter);
+        return model;
+    }
+
+    // few distinct letters in both cases, so lists share rows, repeat them and change their case
+    private static List<String> randomTexts(Random random) {
+        List<String> texts = new ArrayList<>();
+        for (int i = random.nextInt(10); i > 0; i--) {
+            texts.add(String.valueOf("abcdeAB".charAt(random.nextInt(7))));
+        }
+        return texts;
+    }
+
+
+    // the rows an adapter would show, inserted rows are null until they are bound
+    private static class Model extends RecyclerView.AdapterDataObserver {
+
+        private final List<String> mRows = new ArrayList<>();
+        private final Set<Integer> mChanged = new HashSet<>();
+        private int mEvents;
+
+        Model(SuggestionResults results) {
+            for (int i = 0; i < results.size(); i++) {
+                mRows.add(results.getText(i));
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents++;
+            for (int i = 0; i < itemCount; i++) {
+                mRows.add(positionStart + i, null);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents++;
+            for (int i = 0; i < itemCount; i++) {
+                mRows.remove(positionStart);
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mEvents++;
+            mRows.add(toPosition, mRows.remove(fromPosition));
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mEvents++;
+            for (int i = 0; i < itemCount; i++) {
+                mChanged.add(positionStart + i);
+            }
+        }
+
+        // kept rows must match their new text, and must have been rebound if it differs
+        void assertShows(List<String> texts) {
+            assertEquals(texts.size(), mRows.size());
+            for (int i = 0; i < texts.size(); i++) {
+                String row = mRows.get(i);
+                if (row != null) {
+                    assertEquals(texts.toString(), SuggestionIndex.normalize(texts.get(i)), SuggestionIndex.normalize(row));
+                    assertTrue(texts + " " + i, row.equals(texts.get(i)) || mChanged.contains(i));
+                }
+            }
+        }
+    }
+
+
+    private static class Adapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+
+}
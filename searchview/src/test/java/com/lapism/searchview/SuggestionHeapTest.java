@@ -0,0 +1,132 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class SuggestionHeapTest {
+
+    private final SuggestionHeap mHeap = new SuggestionHeap();
+
+    @Test
+    public void keepsTheSmallestKeysBestFirst() {
+        mHeap.reset(3);
+        mHeap.offer(key(50, 1), 10);
+        mHeap.offer(key(10, 2), 20);
+        mHeap.offer(key(40, 3), 30);
+        mHeap.offer(key(20, 4), 40);
+        mHeap.offer(key(60, 5), 50);
+
+        assertEquals(3, mHeap.size());
+        int[] ids = new int[3];
+        int[] payloads = new int[3];
+        assertEquals(3, mHeap.drain(ids, payloads));
+        assertArrayEquals(new int[]{2, 4, 3}, ids);
+        assertArrayEquals(new int[]{20, 40, 30}, payloads);
+        assertEquals(0, mHeap.size());
+    }
+
+    @Test
+    public void keepsTheCheaperKeyOfAnItem() {
+        mHeap.reset(3);
+        mHeap.offer(key(30, 7), 1);
+        mHeap.offer(key(10, 8), 2);
+        mHeap.offer(key(20, 7), 3);
+        mHeap.offer(key(40, 7), 4);
+
+        int[] ids = new int[3];
+        int[] payloads = new int[3];
+        assertEquals(2, mHeap.drain(ids, payloads));
+        assertArrayEquals(new int[]{8, 7, 0}, ids);
+        assertArrayEquals(new int[]{2, 3, 0}, payloads);
+    }
+
+    @Test
+    public void drainsWithoutPayloads() {
+        mHeap.reset(2);
+        mHeap.offer(key(2, 1), 0);
+        mHeap.offer(key(1, 2), 0);
+
+        int[] ids = new int[2];
+        assertEquals(2, mHeap.drain(ids, null));
+        assertArrayEquals(new int[]{2, 1}, ids);
+    }
+
+    @Test
+    public void zeroCapacityKeepsNothing() {
+        mHeap.reset(0);
+        mHeap.offer(key(1, 1), 0);
+
+        assertEquals(0, mHeap.capacity());
+        assertEquals(0, mHeap.drain(new int[0], null));
+    }
+
+    @Test
+    public void resetGrowsAndEmpties() {
+        mHeap.reset(2);
+        mHeap.offer(key(1, 1), 0);
+        mHeap.reset(100);
+
+        assertEquals(100, mHeap.capacity());
+        assertEquals(0, mHeap.size());
+        for (int i = 0; i < 100; i++) {
+            mHeap.offer(key(100 - i, i), i);
+        }
+        int[] ids = new int[100];
+        assertEquals(100, mHeap.drain(ids, null));
+        assertEquals(99, ids[0]);
+        assertEquals(0, ids[99]);
+    }
+
+    @Test
+    public void matchesSortingRandomKeys() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            int capacity = random.nextInt(20);
+            int items = 1 + random.nextInt(50);
+            Map<Integer, Long> best = new HashMap<>();
+            mHeap.reset(capacity);
+            for (int i = random.nextInt(200); i > 0; i--) {
+                int item = random.nextInt(items);
+                long key = key(random.nextInt(1000), item);
+                mHeap.offer(key, item);
+                Long kept = best.get(item);
+                if (kept == null || key < kept) {
+                    best.put(item, key);
+                }
+            }
+
+            long[] keys = new long[best.size()];
+            int n = 0;
+            for (long key : best.values()) {
+                keys[n++] = key;
+            }
+            Arrays.sort(keys);
+            int count = Math.min(capacity, keys.length);
+            int[] expected = new int[count];
+            for (int i = 0; i < count; i++) {
+                expected[i] = (int) (keys[i] & SuggestionHeap.ITEM_MASK);
+            }
+
+            int[] ids = new int[count];
+            int[] payloads = new int[count];
+            assertEquals(count, mHeap.drain(ids, payloads));
+            assertArrayEquals(expected, ids);
+            // every payload was its item id
+            assertArrayEquals(expected, payloads);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private static long key(long rank, int item) {
+        return rank << 24 | item;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.lapism.searchview;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.lapism.searchview.SuggestionIndexTest.texts;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SuggestionIndexFileTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void itemsAndWeightsRoundTrip() throws IOException {
+        SuggestionIndex index = new SuggestionIndex(2);
+        index.add("android", 3);
+        index.add("", 0);
+        index.add("apple", 7);
+
+        SuggestionIndexFile file = SuggestionIndexFile.open(write(index));
+        assertEquals(3, file.size());
+        assertEquals(2, file.getCompletions());
+        assertEquals("android", file.getItem(0));
+        assertEquals("", file.getItem(1));
+        assertEquals(7, file.getWeight(2));
+    }
+
+    @Test
+    public void lookupsMatchTheIndex() throws IOException {
+        Random random = new Random(5);
+        for (int completions : new int[]{0, 3, 8}) {
+            SuggestionIndex index = SuggestionIndexTest.randomIndex(random, completions, 300);
+            SuggestionIndexFile file = SuggestionIndexFile.open(write(index));
+            for (int i = 0; i < 200; i++) {
+                String query = SuggestionIndexTest.randomText(random, 1 + random.nextInt(4));
+                int maxEdits = random.nextInt(3);
+                int limit = 1 + random.nextInt(12);
+                assertSameResults(index.search(query, limit), file.search(query, limit));
+                assertSameResults(index.searchFuzzy(query, maxEdits, limit), file.searchFuzzy(query, maxEdits, limit));
+                assertSameResults(index.searchInfix(query, limit), file.searchInfix(query, limit));
+            }
+        }
+    }
+
+    @Test
+    public void requestsUseTheirMatchMode() throws IOException {
+        SuggestionIndexFile file = SuggestionIndexFile.open(write(new SuggestionIndex(Arrays.asList("android", "sandwich"))));
+
+        SuggestionRequest prefix = new SuggestionRequest(1, "and", SuggestionRequest.MATCH_PREFIX, false, 10, 0);
+        SuggestionRequest infix = new SuggestionRequest(2, "and", SuggestionRequest.MATCH_INFIX, false, 10, 0);
+        SuggestionRequest fuzzy = new SuggestionRequest(3, "anfroid", SuggestionRequest.MATCH_PREFIX, true, 10, 0);
+        assertEquals(Arrays.asList("android"), texts(file.getSuggestions(prefix)));
+        assertEquals(Arrays.asList("android", "sandwich"), texts(file.getSuggestions(infix)));
+        assertEquals(Arrays.asList("android"), texts(file.getSuggestions(fuzzy)));
+    }
+
+    @Test
+    public void writeToReplacesTheFileWhole() throws IOException {
+        File path = write(new SuggestionIndex(Arrays.asList("old", "items", "here")));
+        new SuggestionIndex(Arrays.asList("new")).writeTo(path);
+
+        assertEquals(Arrays.asList("new"), texts(SuggestionIndexFile.open(path).search("", 10)));
+        assertFalse(new File(path.getPath() + ".tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void anotherMagicIsRefused() throws IOException {
+        File path = write(new SuggestionIndex(Arrays.asList("android")));
+        overwriteInt(path, 0, 0x12345678);
+        SuggestionIndexFile.open(path);
+    }
+
+    @Test(expected = IOException.class)
+    public void aNewerVersionIsRefused() throws IOException {
+        File path = write(new SuggestionIndex(Arrays.asList("android")));
+        overwriteInt(path, 4, SuggestionIndexFile.VERSION + 1);
+        SuggestionIndexFile.open(path);
+    }
+
+    @Test(expected = IOException.class)
+    public void aTruncatedFileIsRefused() throws IOException {
+        File path = write(new SuggestionIndex(Arrays.asList("android")));
+        RandomAccessFile out = new RandomAccessFile(path, "rw");
+        try {
+            out.setLength(out.length() - 2);
+        } finally {
+            out.close();
+        }
+        SuggestionIndexFile.open(path);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    private File write(SuggestionIndex index) throws IOException {
+        File path = new File(mFolder.getRoot(), "index");
+        index.writeTo(path);
+        assertTrue(path.length() >= SuggestionIndexFile.HEADER_SIZE);
+        return path;
+    }
+
+    // the header is little-endian
+    private static void overwriteInt(File path, int offset, int value) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(path, "rw");
+        try {
+            out.seek(offset);
+            out.writeInt(Integer.reverseBytes(value));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertSameResults(SuggestionResults expected, SuggestionResults actual) {
+        assertEquals(texts(expected), texts(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getMatchStart(i), actual.getMatchStart(i));
+            assertEquals(expected.getMatchEnd(i), actual.getMatchEnd(i));
+        }
+    }
+
+}
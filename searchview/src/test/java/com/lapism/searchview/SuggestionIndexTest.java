@@ -0,0 +1,374 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class SuggestionIndexTest {
+
+    @Test
+    public void searchMatchesThePrefixIgnoringCase() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("Android", "apple", "Banana", "and"));
+
+        assertEquals(Arrays.asList("Android", "and"), texts(index.search("AN", 10)));
+        assertEquals(Arrays.asList("Banana"), texts(index.search("b", 10)));
+    }
+
+    @Test
+    public void searchWithoutMatchIsEmpty() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android", "apple"));
+
+        assertTrue(index.search("b", 10).isEmpty());
+        assertTrue(index.search("androids", 10).isEmpty());
+        assertTrue(index.search("a", 0).isEmpty());
+    }
+
+    @Test
+    public void searchStopsAtTheLimit() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("a1", "a2", "a3", "a4"));
+
+        assertEquals(2, index.search("a", 2).size());
+        assertEquals(4, index.search("", 10).size());
+    }
+
+    @Test
+    public void searchHighlightsThePrefix() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android"));
+
+        SuggestionResults results = index.search("And", 10);
+        assertEquals(0, results.getMatchStart(0));
+        assertEquals(3, results.getMatchEnd(0));
+        assertEquals("android", results.getText(0));
+    }
+
+    @Test
+    public void addReturnsSequentialIds() {
+        SuggestionIndex index = new SuggestionIndex();
+
+        assertEquals(0, index.add("one"));
+        assertEquals(1, index.add("two"));
+        assertEquals(2, index.add("one"));
+        assertEquals(3, index.size());
+        assertEquals("two", index.getItem(1));
+        assertEquals(2, index.search("one", 10).size());
+    }
+
+    @Test
+    public void clearDropsEveryItem() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android", "apple"));
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("a", 10).isEmpty());
+        index.add("avocado");
+        assertEquals(Arrays.asList("avocado"), texts(index.search("a", 10)));
+    }
+
+    @Test
+    public void completionsAreRankedByWeight() {
+        SuggestionIndex index = new SuggestionIndex(2);
+        index.add("car", 1);
+        index.add("cart", 5);
+        index.add("carbon", 3);
+        index.add("cat", 4);
+
+        assertEquals(Arrays.asList("cart", "cat"), texts(index.search("c", 2)));
+        assertEquals(Arrays.asList("cart", "carbon"), texts(index.search("car", 2)));
+    }
+
+    @Test
+    public void limitAboveTheStoredCompletionsRanksTheSubtree() {
+        for (int completions : new int[]{0, 2}) {
+            SuggestionIndex index = new SuggestionIndex(completions);
+            index.add("car", 1);
+            index.add("cart", 5);
+            index.add("carbon", 3);
+            index.add("cat", 4);
+            index.add("dog", 9);
+
+            assertEquals(Arrays.asList("cart", "cat", "carbon", "car"), texts(index.search("c", 10)));
+        }
+    }
+
+    @Test
+    public void equalWeightsKeepInsertionOrder() {
+        SuggestionIndex index = new SuggestionIndex(3);
+        index.addAll(Arrays.asList("cb", "ca", "cc"));
+
+        assertEquals(Arrays.asList("cb", "ca", "cc"), texts(index.search("c", 3)));
+    }
+
+    @Test
+    public void setWeightReranksTheCompletions() {
+        SuggestionIndex index = new SuggestionIndex(2);
+        int car = index.add("car", 1);
+        index.add("cart", 5);
+        int cat = index.add("cat", 4);
+
+        index.setWeight(car, 9);
+        assertEquals(Arrays.asList("car", "cart"), texts(index.search("c", 2)));
+        index.setWeight(car, 0);
+        index.setWeight(cat, 6);
+        assertEquals(Arrays.asList("cat", "cart"), texts(index.search("c", 2)));
+        assertEquals(6, index.getWeight(cat));
+    }
+
+    @Test
+    public void searchMatchesABruteForceRanking() {
+        Random random = new Random(1);
+        for (int completions : new int[]{0, 3, 8}) {
+            SuggestionIndex index = randomIndex(random, completions, 300);
+            for (int i = 0; i < 200; i++) {
+                String prefix = randomText(random, 1 + random.nextInt(3));
+                int limit = 1 + random.nextInt(12);
+                assertEquals(prefix + " " + limit, ranked(index, prefix, -1, limit), texts(index.search(prefix, limit)));
+            }
+        }
+    }
+
+    @Test
+    public void itemsAreReadBackFromTheArena() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("first");
+        index.add("", 0);
+        index.add("xxsecondxx".toCharArray(), 2, 6, 0);
+
+        assertEquals(5, index.getItemLength(0));
+        assertEquals(0, index.getItemLength(1));
+        assertEquals("second", index.getItem(2));
+        char[] chars = new char[8];
+        assertEquals(6, index.getItemChars(2, chars, 1));
+        assertEquals("second", new String(chars, 1, 6));
+    }
+
+    @Test
+    public void arenaGrowsAndTrims() {
+        SuggestionIndex index = new SuggestionIndex(4);
+        for (int i = 0; i < 2000; i++) {
+            index.add("item-" + i, i);
+        }
+        index.trimToSize();
+        index.add("\u00dcn\u00efc\u00f6de", 0);
+
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("item-" + i, index.getItem(i));
+        }
+        assertEquals(Arrays.asList("item-1999", "item-1998"), texts(index.search("ITEM-19", 2)));
+        assertEquals(Arrays.asList("\u00dcn\u00efc\u00f6de"), texts(index.search("\u00fcN\u00cf", 10)));
+    }
+
+    @Test
+    public void searchFuzzyToleratesTypos() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android", "apple", "banana"));
+
+        assertEquals(Arrays.asList("android"), texts(index.searchFuzzy("anfroid", 1, 10)));
+        assertEquals(Arrays.asList("android"), texts(index.searchFuzzy("adnroid", 2, 10)));
+        assertEquals(Arrays.asList("android"), texts(index.searchFuzzy("andr", 0, 10)));
+        assertTrue(index.searchFuzzy("anfroid", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void searchFuzzyRanksCheaperMatchesFirst() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("cut", 9);
+        index.add("cat", 1);
+        index.add("cst", 0);
+
+        // a is next to s on the keyboard, u is not
+        assertEquals(Arrays.asList("cst", "cat", "cut"), texts(index.searchFuzzy("cst", 1, 10)));
+    }
+
+    @Test
+    public void searchFuzzyHighlightsTheMatchedPrefix() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android"));
+
+        SuggestionResults results = index.searchFuzzy("anfr", 1, 10);
+        assertEquals(0, results.getMatchStart(0));
+        assertEquals(4, results.getMatchEnd(0));
+    }
+
+    @Test
+    public void searchFuzzyMatchesABruteForceRanking() {
+        Random random = new Random(2);
+        for (int completions : new int[]{0, 3, 8}) {
+            SuggestionIndex index = randomIndex(random, completions, 300);
+            for (int i = 0; i < 200; i++) {
+                String query = randomText(random, 1 + random.nextInt(5));
+                int maxEdits = random.nextInt(3);
+                int limit = 1 + random.nextInt(12);
+                assertEquals(query + " " + maxEdits + " " + limit, ranked(index, query, maxEdits, limit), texts(index.searchFuzzy(query, maxEdits, limit)));
+            }
+        }
+    }
+
+    @Test
+    public void searchInfixFindsTheQueryAnywhere() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("New York", 1);
+        index.add("york", 3);
+        index.add("Yorkshire", 2);
+        index.add("Boston", 9);
+
+        SuggestionResults results = index.searchInfix("ORK", 10);
+        assertEquals(Arrays.asList("york", "Yorkshire", "New York"), texts(results));
+        assertEquals(5, results.getMatchStart(2));
+        assertEquals(8, results.getMatchEnd(2));
+    }
+
+    @Test
+    public void searchInfixNeedsEveryTrigramInPlace() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("abcxbcd", "xabcdx", "aaaa", "aaa"));
+
+        assertEquals(Arrays.asList("xabcdx"), texts(index.searchInfix("abcd", 10)));
+        assertEquals(Arrays.asList("aaaa"), texts(index.searchInfix("aaaa", 10)));
+    }
+
+    @Test
+    public void shortInfixQueriesMatchThePrefix() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("xab", "abx"));
+
+        assertEquals(Arrays.asList("abx"), texts(index.searchInfix("ab", 10)));
+    }
+
+    @Test
+    public void searchInfixSeesItemsAddedAfterTheFirstQuery() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("one"));
+        assertTrue(index.searchInfix("two", 10).isEmpty());
+
+        index.add("network");
+        assertEquals(Arrays.asList("network"), texts(index.searchInfix("two", 10)));
+    }
+
+    @Test
+    public void searchInfixRanksManyMatches() {
+        SuggestionIndex index = new SuggestionIndex();
+        for (int i = 0; i < 500; i++) {
+            index.add("match " + i, i);
+        }
+
+        assertEquals(Arrays.asList("match 499", "match 498", "match 497"), texts(index.searchInfix("atc", 3)));
+        assertEquals(500, index.searchInfix("atc", 1000).size());
+    }
+
+    @Test
+    public void searchInfixMatchesABruteForceRanking() {
+        Random random = new Random(3);
+        final SuggestionIndex index = randomIndex(random, 0, 300);
+        for (int i = 0; i < 200; i++) {
+            final String query = SuggestionIndex.normalize(randomText(random, 3 + random.nextInt(2)));
+            int limit = 1 + random.nextInt(12);
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 0; id < index.size(); id++) {
+                if (SuggestionIndex.normalize(index.getItem(id)).contains(query)) {
+                    ids.add(id);
+                }
+            }
+            Collections.sort(ids, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return index.getWeight(a) != index.getWeight(b) ? index.getWeight(b) - index.getWeight(a) : a - b;
+                }
+            });
+            List<String> expected = new ArrayList<>();
+            for (int j = 0; j < Math.min(limit, ids.size()); j++) {
+                expected.add(index.getItem(ids.get(j)));
+            }
+            assertEquals(query + " " + limit, expected, texts(index.searchInfix(query, limit)));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getItemChecksTheId() {
+        new SuggestionIndex(Arrays.asList("android")).getItem(1);
+    }
+
+    // short texts over few letters, so that most prefixes and typos match something
+    static SuggestionIndex randomIndex(Random random, int completions, int size) {
+        SuggestionIndex index = new SuggestionIndex(completions);
+        for (int i = 0; i < size; i++) {
+            index.add(randomText(random, 1 + random.nextInt(7)), random.nextInt(50));
+        }
+        return index;
+    }
+
+    static String randomText(Random random, int length) {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = "abcdeXYZ".charAt(random.nextInt(8));
+        }
+        return new String(text);
+    }
+
+    /**
+     * Every matching item ranked the way the index ranks them: by cost, then weight, then id.
+     * With maxEdits below 0 items must start with the query, else the cost is the cheapest
+     * weighted edit distance between the query and a prefix of the item.
+     */
+    static List<String> ranked(final SuggestionIndex index, String query, int maxEdits, int limit) {
+        String normalized = SuggestionIndex.normalize(query);
+        final int[] costs = new int[index.size()];
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < index.size(); id++) {
+            String key = SuggestionIndex.normalize(index.getItem(id));
+            costs[id] = maxEdits < 0 ? key.startsWith(normalized) ? 0 : -1 : distance(normalized, key);
+            if (costs[id] >= 0 && costs[id] <= Math.max(0, maxEdits) * 2) {
+                ids.add(id);
+            }
+        }
+        Collections.sort(ids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (costs[a] != costs[b]) {
+                    return costs[a] - costs[b];
+                }
+                if (index.getWeight(a) != index.getWeight(b)) {
+                    return index.getWeight(b) - index.getWeight(a);
+                }
+                return a - b;
+            }
+        });
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, ids.size()); i++) {
+            texts.add(index.getItem(ids.get(i)));
+        }
+        return texts;
+    }
+
+    // doubled costs, a neighbouring key substitutes for half an edit
+    private static int distance(String query, String key) {
+        int[][] rows = new int[key.length() + 1][query.length() + 1];
+        for (int j = 0; j <= query.length(); j++) {
+            rows[0][j] = j * 2;
+        }
+        int best = rows[0][query.length()];
+        for (int i = 1; i <= key.length(); i++) {
+            rows[i][0] = i * 2;
+            char c = key.charAt(i - 1);
+            for (int j = 1; j <= query.length(); j++) {
+                char q = query.charAt(j - 1);
+                int substitute = rows[i - 1][j - 1] + (q == c ? 0 : SearchKeyboard.isAdjacent(q, c) ? 1 : 2);
+                rows[i][j] = Math.min(substitute, Math.min(rows[i - 1][j], rows[i][j - 1]) + 2);
+            }
+            best = Math.min(best, rows[i][query.length()]);
+        }
+        return best;
+    }
+
+    static List<String> texts(SuggestionResults results) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            texts.add(results.getText(i));
+        }
+        return texts;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.lapism.searchview.SuggestionIndexTest.texts;
+import static org.junit.Assert.assertEquals;
+
+
+public class SuggestionRefinerTest {
+
+    private static final int PREFIX = SuggestionRequest.MATCH_PREFIX;
+    private static final int INFIX = SuggestionRequest.MATCH_INFIX;
+
+    @Test
+    public void typingMatchesFreshLookups() {
+        Random random = new Random(4);
+        SuggestionIndex index = SuggestionIndexTest.randomIndex(random, 3, 300);
+        SuggestionRefiner refiner = new SuggestionRefiner(index);
+        StringBuilder query = new StringBuilder();
+        int mode = PREFIX;
+        for (int i = 0; i < 2000; i++) {
+            // mostly typing, sometimes deleting, clearing or switching the match mode
+            int action = random.nextInt(10);
+            if (action < 6 || query.length() == 0) {
+                query.append(SuggestionIndexTest.randomText(random, 1));
+            } else if (action < 8) {
+                query.setLength(query.length() - 1);
+            } else if (action < 9) {
+                query.setLength(0);
+            } else {
+                mode = mode == PREFIX ? INFIX : PREFIX;
+            }
+            int limit = 1 + random.nextInt(10);
+
+            SuggestionResults expected = mode == INFIX ? index.searchInfix(query, limit) : index.search(query, limit);
+            assertEquals(query + " " + mode, texts(expected), texts(refiner.search(query, mode, false, limit)));
+        }
+    }
+
+    @Test
+    public void refinementSeesChangesToTheIndex() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("cat", "category"));
+        SuggestionRefiner refiner = new SuggestionRefiner(index);
+
+        assertEquals(Arrays.asList("cat", "category"), texts(refiner.search("ca", PREFIX, false, 10)));
+        index.add("catalog");
+        assertEquals(Arrays.asList("cat", "category", "catalog"), texts(refiner.search("cat", PREFIX, false, 10)));
+
+        assertEquals(Arrays.asList("category"), texts(refiner.search("ate", INFIX, false, 10)));
+        index.add("plated", 1);
+        assertEquals(Arrays.asList("plated"), texts(refiner.search("ated", INFIX, false, 10)));
+    }
+
+    @Test
+    public void infixRefinementKeepsManyMatches() {
+        SuggestionIndex index = new SuggestionIndex();
+        for (int i = 0; i < 500; i++) {
+            index.add("match " + (i % 2 == 0 ? "even " : "odd ") + i, i);
+        }
+        SuggestionRefiner refiner = new SuggestionRefiner(index);
+
+        assertEquals(500, refiner.search("atch", INFIX, false, 1000).size());
+        assertEquals(250, refiner.search("atch e", INFIX, false, 1000).size());
+        assertEquals(Arrays.asList("match even 498"), texts(refiner.search("atch ev", INFIX, false, 1)));
+    }
+
+    @Test
+    public void fuzzyLookupsGoToTheIndex() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("android", "apple"));
+        SuggestionRefiner refiner = new SuggestionRefiner(index);
+
+        assertEquals(Arrays.asList("android"), texts(refiner.search("anfroid", PREFIX, true, 10)));
+        assertEquals(Arrays.asList("android"), texts(refiner.search("an", PREFIX, false, 10)));
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.lapism.searchview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+
+import static com.lapism.searchview.SuggestionIndexTest.texts;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SuggestionResultsTest {
+
+    @Test
+    public void emptyHasNoRows() {
+        assertTrue(SuggestionResults.EMPTY.isEmpty());
+        assertEquals(0, SuggestionResults.EMPTY.getHistoryCount());
+        assertTrue(SuggestionResults.EMPTY.withHistory(Collections.<String>emptyList(), 0, 8).isEmpty());
+    }
+
+    @Test
+    public void historyComesFirst() {
+        SuggestionResults results = SuggestionResults.of(Arrays.asList("apple", "apricot"), new int[]{0, 2, 0, 2})
+                .withHistory(Arrays.asList("april"), 2, 8);
+
+        assertEquals(Arrays.asList("april", "apple", "apricot"), texts(results));
+        assertEquals(1, results.getHistoryCount());
+        assertTrue(results.isHistory(0));
+        assertFalse(results.isHistory(1));
+        assertArrayEquals(new int[]{-1, 0, 1}, results.toIdArray());
+        assertEquals(0, results.getMatchStart(0));
+        assertEquals(2, results.getMatchEnd(0));
+        assertEquals(2, results.getMatchEnd(2));
+    }
+
+    @Test
+    public void suggestionsRepeatingTheHistoryAreDropped() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("Apple", "apricot", "avocado"));
+        SuggestionResults results = index.search("a", 10).withHistory(Arrays.asList("apple"), 1, 10);
+
+        assertEquals(Arrays.asList("apple", "apricot", "avocado"), texts(results));
+        assertArrayEquals(new int[]{-1, 1, 2}, results.toIdArray());
+        assertEquals(1, results.getMatchEnd(1));
+    }
+
+    @Test
+    public void theLimitCoversHistoryAndSuggestions() {
+        SuggestionResults suggestions = SuggestionResults.of(Arrays.asList("one", "two", "three"));
+
+        assertEquals(Arrays.asList("h1", "h2", "one"), texts(suggestions.withHistory(Arrays.asList("h1", "h2"), 0, 3)));
+        assertEquals(Arrays.asList("h1"), texts(suggestions.withHistory(Arrays.asList("h1", "h2"), 0, 1)));
+    }
+
+    @Test
+    public void charsAreCopiedForEveryKindOfRow() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("indexed"));
+        SuggestionResults results = index.search("", 10).withHistory(Arrays.asList("history"), 0, 10);
+
+        char[] chars = new char[results.getTextLength(1)];
+        results.getChars(1, chars, 0);
+        assertEquals("indexed", new String(chars));
+        chars = new char[results.getTextLength(0)];
+        results.getChars(0, chars, 0);
+        assertEquals("history", new String(chars));
+        assertEquals(-1, results.getMatchStart(0));
+    }
+
+    @Test
+    public void addingItemsKeepsEarlierResultsReadable() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("apple", "apricot"));
+        SuggestionResults results = index.search("ap", 10);
+        assertTrue(results.isCurrent());
+
+        index.add("banana");
+        index.setWeight(1, 5);
+        assertFalse(results.isCurrent());
+        assertEquals(Arrays.asList("apple", "apricot"), texts(results));
+        assertTrue(SuggestionResults.of(Arrays.asList("plain")).isCurrent());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void resultsFromBeforeAClearCannotBeRead() {
+        SuggestionIndex index = new SuggestionIndex(Arrays.asList("apple", "apricot"));
+        SuggestionResults results = index.search("ap", 10);
+        index.clear();
+        index.addAll(Arrays.asList("banana", "cherry", "damson"));
+
+        assertFalse(results.isCurrent());
+        results.getText(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangesMustCoverEveryText() {
+        SuggestionResults.of(Arrays.asList("one", "two"), new int[2]);
+    }
+
+}